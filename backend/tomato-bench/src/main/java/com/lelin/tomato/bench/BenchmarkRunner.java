@@ -0,0 +1,28 @@
+package com.lelin.tomato.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Same CLI as JMH's own Main, but writes
+ * JSON results to jmh-result.json unless -rf / -rff are given, so runs
+ * from different commits can be diffed with CompareResults.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> argv = new ArrayList<>(List.of(args));
+    if (!argv.contains("-rf")) {
+      argv.addAll(List.of("-rf", "json"));
+    }
+    if (!argv.contains("-rff")) {
+      argv.addAll(List.of("-rff", "jmh-result.json"));
+    }
+    Main.main(argv.toArray(String[]::new));
+  }
+}
@@ -0,0 +1,69 @@
+package com.lelin.tomato.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Diffs two JMH JSON result files:
+ *   java -cp target/benchmarks.jar com.lelin.tomato.bench.CompareResults base.json head.json [thresholdPct]
+ * Prints the change per benchmark and exits 1 if any got slower than the
+ * threshold (default 10%). All modes used here are time-per-op, so higher is worse.
+ */
+public final class CompareResults {
+
+  private CompareResults() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("usage: CompareResults <base.json> <head.json> [thresholdPct]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+    Map<String, JsonNode> base = load(new File(args[0]));
+    Map<String, JsonNode> head = load(new File(args[1]));
+
+    boolean regressed = false;
+    System.out.printf("%-80s %14s %14s %9s%n", "benchmark", "base", "head", "change");
+    for (Map.Entry<String, JsonNode> e : head.entrySet()) {
+      JsonNode before = base.get(e.getKey());
+      double now = e.getValue().path("primaryMetric").path("score").asDouble();
+      String unit = e.getValue().path("primaryMetric").path("scoreUnit").asText();
+
+      if (before == null) {
+        System.out.printf("%-80s %14s %14.3f %9s  %s%n", e.getKey(), "-", now, "new", unit);
+        continue;
+      }
+
+      double was = before.path("primaryMetric").path("score").asDouble();
+      double pct = was == 0 ? 0 : (now - was) / was * 100;
+      boolean slower = pct > threshold;
+      regressed |= slower;
+      System.out.printf("%-80s %14.3f %14.3f %+8.1f%%  %s%s%n",
+          e.getKey(), was, now, pct, unit, slower ? "  REGRESSION" : "");
+    }
+
+    System.exit(regressed ? 1 : 0);
+  }
+
+  // keyed by benchmark name plus its @Param values
+  private static Map<String, JsonNode> load(File file) throws Exception {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode run : new ObjectMapper().readTree(file)) {
+      StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+      JsonNode params = run.path("params");
+      for (Iterator<String> it = params.fieldNames(); it.hasNext(); ) {
+        String name = it.next();
+        key.append(' ').append(name).append('=').append(params.get(name).asText());
+      }
+      results.put(key.toString(), run);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,68 @@
+package com.lelin.tomato.bench;
+
+import com.lelin.tomato.model.Priority;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.Tomato;
+import com.lelin.tomato.security.JWTUtil;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the app objects the benchmarks exercise, without a Spring context
+final class Fixtures {
+
+  static final String SECRET = "12345678901234567890123456789012";
+
+  private Fixtures() {
+  }
+
+  static JWTUtil jwtUtil(long tokenCacheSize) {
+    JWTUtil util = new JWTUtil();
+    ReflectionTestUtils.setField(util, "SECRET", SECRET);
+    ReflectionTestUtils.setField(util, "EXPIRATION", 86_400_000L);
+    ReflectionTestUtils.setField(util, "tokenCacheSize", tokenCacheSize);
+    ReflectionTestUtils.setField(util, "tokenCacheTtlSeconds", 60L);
+    ReflectionTestUtils.invokeMethod(util, "init");
+    return util;
+  }
+
+  // a realistic mix: mostly completed, some with deadlines, a few expired
+  static List<Task> tasks(int count) {
+    LocalDateTime now = LocalDateTime.now();
+    List<Task> tasks = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      boolean completed = i % 4 != 0;
+      tasks.add(Task.builder()
+          .id((long) i + 1)
+          .userId(1L)
+          .title("Task number " + i)
+          .description(i % 3 == 0 ? null : "Some description for task " + i)
+          .priority(Priority.values()[i % Priority.values().length])
+          .createdAt(now.minusDays(i % 90))
+          .dueTime(i % 2 == 0 ? now.plusHours(i % 48) : null)
+          .completedAt(completed ? now.minusHours(i % 24) : null)
+          .timeBombEnabled(i % 2 == 0)
+          .expired(i % 10 == 0)
+          .completed(completed)
+          .tomatoesEarned(completed ? 1 : 0)
+          .build());
+    }
+    return tasks;
+  }
+
+  static List<Tomato> tomatoes(int count) {
+    LocalDateTime now = LocalDateTime.now();
+    List<Tomato> tomatoes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      tomatoes.add(Tomato.builder()
+          .id((long) i + 1)
+          .userId(1L)
+          .taskId((long) i + 1)
+          .timestamp(now.minusMinutes(i * 37L))
+          .build());
+    }
+    return tomatoes;
+  }
+}
@@ -0,0 +1,45 @@
+package com.lelin.tomato.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.Tomato;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Response bodies of GET /tasks and GET /tomatoes/history at realistic sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int size;
+
+  private ObjectMapper mapper;
+  private List<Task> tasks;
+  private List<Tomato> tomatoes;
+
+  @Setup
+  public void setUp() {
+    // same defaults Spring Boot applies to its own ObjectMapper
+    mapper = Jackson2ObjectMapperBuilder.json().build();
+    tasks = Fixtures.tasks(size);
+    tomatoes = Fixtures.tomatoes(size);
+  }
+
+  @Benchmark
+  public byte[] tasks() throws Exception {
+    return mapper.writeValueAsBytes(tasks);
+  }
+
+  @Benchmark
+  public byte[] tomatoes() throws Exception {
+    return mapper.writeValueAsBytes(tomatoes);
+  }
+}
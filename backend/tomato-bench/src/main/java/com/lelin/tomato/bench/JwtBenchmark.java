@@ -0,0 +1,44 @@
+package com.lelin.tomato.bench;
+
+import com.lelin.tomato.security.JWTUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+  private JWTUtil cached;
+  private JWTUtil uncached;
+  private String token;
+
+  @Setup
+  public void setUp() {
+    cached = Fixtures.jwtUtil(10_000);
+    uncached = Fixtures.jwtUtil(0);
+    token = cached.generateToken(42L);
+  }
+
+  @Benchmark
+  public String generate() {
+    return cached.generateToken(42L);
+  }
+
+  // full parse + HMAC check every time
+  @Benchmark
+  public Claims verifyUncached() {
+    return uncached.verify(token);
+  }
+
+  // repeat call from the same session
+  @Benchmark
+  public Claims verifyCached() {
+    return cached.verify(token);
+  }
+}
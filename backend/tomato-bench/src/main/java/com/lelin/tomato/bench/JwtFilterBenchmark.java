@@ -0,0 +1,60 @@
+package com.lelin.tomato.bench;
+
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import com.lelin.tomato.security.JWTAuthenticationFilter;
+import com.lelin.tomato.security.JWTUtil;
+import com.lelin.tomato.security.PrincipalCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// One authenticated request through the JWT filter, with the chain stubbed out
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+  private JWTAuthenticationFilter filter;
+  private String authHeader;
+  private final FilterChain chain = (req, res) -> { };
+
+  @Setup
+  public void setUp() {
+    UserRepository users = mock(UserRepository.class);
+    when(users.findById(42L)).thenReturn(Optional.of(
+        User.builder().id(42L).username("bench").email("bench@example.com").build()));
+
+    JWTUtil jwtUtil = Fixtures.jwtUtil(10_000);
+    filter = new JWTAuthenticationFilter(jwtUtil, new PrincipalCache(users, 10_000, 300),
+        new SimpleMeterRegistry());
+    authHeader = "Bearer " + jwtUtil.generateToken(42L);
+  }
+
+  @Benchmark
+  public MockHttpServletResponse authenticatedRequest() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks");
+    request.setServletPath("/tasks");
+    request.addHeader("Authorization", authHeader);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    try {
+      filter.doFilter(request, response, chain);
+    } finally {
+      SecurityContextHolder.clearContext();
+    }
+    return response;
+  }
+}
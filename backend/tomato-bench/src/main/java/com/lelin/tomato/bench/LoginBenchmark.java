@@ -0,0 +1,59 @@
+package com.lelin.tomato.bench;
+
+import com.lelin.tomato.dto.LoginRequest;
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import com.lelin.tomato.security.PasswordHasher;
+import com.lelin.tomato.service.AuthService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// AuthService.login with the repository mocked out: BCrypt verify (through the
+// hasher's pool hand-off) + token issue
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+  private PasswordHasher hasher;
+  private AuthService authService;
+  private LoginRequest request;
+
+  @Setup
+  public void setUp() {
+    UserRepository users = mock(UserRepository.class);
+    when(users.findByEmail("bench@example.com")).thenReturn(Optional.of(User.builder()
+        .id(42L)
+        .username("bench")
+        .email("bench@example.com")
+        .password(new BCryptPasswordEncoder().encode("Password123!"))
+        .build()));
+
+    hasher = new PasswordHasher(new BCryptPasswordEncoder(), new SimpleMeterRegistry(), 1, 32, 30_000);
+    authService = new AuthService(users, hasher, Fixtures.jwtUtil(10_000));
+
+    request = new LoginRequest();
+    request.setEmail("bench@example.com");
+    request.setPassword("Password123!");
+  }
+
+  @TearDown
+  public void tearDown() {
+    hasher.shutdown();
+  }
+
+  @Benchmark
+  public String login() {
+    return authService.login(request).token();
+  }
+}
@@ -0,0 +1,26 @@
+package com.lelin.tomato.bench;
+
+import com.lelin.tomato.model.PunishmentType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PunishmentTypeBenchmark {
+
+  @Benchmark
+  public PunishmentType randomType() {
+    return PunishmentType.random();
+  }
+
+  // what the bulk expiry path sees when several chunks run at once
+  @Benchmark
+  @Threads(4)
+  public PunishmentType randomTypeContended() {
+    return PunishmentType.random();
+  }
+}
@@ -0,0 +1,137 @@
+package com.lelin.tomato.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps how many connections can be checked out at once and, more importantly,
+ * how many callers may queue for one. With a virtual thread per request there is
+ * no thread pool left to throttle load, so thousands of requests would otherwise
+ * pile up inside the connection pool and all time out together; here the excess
+ * fails fast with SQLTransientConnectionException instead. Each permit is held
+ * from getConnection() until the connection is closed.
+ *
+ * Publishes jdbc.bounded.* gauges tagged with its pool (primary, or replica in read
+ * replica mode).
+ */
+public class BoundedDataSource extends DelegatingDataSource implements MeterBinder {
+
+  private final String pool;
+  private final Semaphore permits;
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final int maxConcurrency;
+  private final int maxWaiters;
+  private final long acquireTimeoutMs;
+
+  public BoundedDataSource(DataSource target, String pool, int maxConcurrency, int maxWaiters,
+      long acquireTimeoutMs) {
+    super(target);
+    this.pool = pool;
+    this.permits = new Semaphore(maxConcurrency, true);
+    this.maxConcurrency = maxConcurrency;
+    this.maxWaiters = maxWaiters;
+    this.acquireTimeoutMs = acquireTimeoutMs;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    acquire();
+    try {
+      return releasingOnClose(super.getConnection());
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    acquire();
+    try {
+      return releasingOnClose(super.getConnection(username, password));
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("jdbc.bounded.in-use", this, BoundedDataSource::getInUse)
+        .description("Connections handed out under the concurrency bound")
+        .tag("pool", pool)
+        .register(registry);
+    Gauge.builder("jdbc.bounded.waiting", this, BoundedDataSource::getWaiting)
+        .description("Callers waiting for a connection permit")
+        .tag("pool", pool)
+        .register(registry);
+    Gauge.builder("jdbc.bounded.max", this, BoundedDataSource::getMaxConcurrency)
+        .tag("pool", pool)
+        .register(registry);
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public int getInUse() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  public int getWaiting() {
+    return waiting.get();
+  }
+
+  private void acquire() throws SQLException {
+    if (permits.tryAcquire()) {
+      return;
+    }
+    if (waiting.incrementAndGet() > maxWaiters) {
+      waiting.decrementAndGet();
+      throw new SQLTransientConnectionException(
+          "Too many requests waiting for a database connection (" + maxWaiters + ")");
+    }
+    try {
+      if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new SQLTransientConnectionException(
+            "Timed out after " + acquireTimeoutMs + "ms waiting for a database connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+
+  private Connection releasingOnClose(Connection target) {
+    AtomicBoolean released = new AtomicBoolean();
+    return (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class},
+        (proxy, method, args) -> {
+          try {
+            return method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          } finally {
+            if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+              permits.release();
+            }
+          }
+        });
+  }
+}
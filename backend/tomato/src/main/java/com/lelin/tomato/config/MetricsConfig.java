@@ -0,0 +1,34 @@
+package com.lelin.tomato.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Everything is scraped from /actuator/prometheus (see application.yml for exposure
+ * and histogram settings). Spring Boot binds HTTP server, Hikari, Hibernate, JVM and
+ * executor meters on its own; this adds what it can't see:
+ *
+ *   app.service                 @Timed service methods (TaskService, TomatoService, PunishmentService)
+ *   auth.jwt.filter             JWTAuthenticationFilter, by result
+ *   auth.hashing.*              PasswordHasher queue depth, wait and BCrypt time
+ *   http.ratelimit.rejected     RateLimitFilter 429s, by reason
+ *   tasks.expiry.lag            how long after dueTime a task actually expired, by path
+ *   tasks.expiry.run.*          TimeBombScheduler reconcile runs: tasks expired and duration
+ *   tasks.conflict.*            ConflictRetry re-runs after lost write races, and give-ups
+ *   http.idempotency.replayed   creates answered from IdempotencyStore
+ *   garden.cache.*              GardenStateCache lookups by result (hit/miss/stale), evictions, size
+ *   archive.moved               rows HistoryArchiver moved to the archive tables, by table
+ *   jdbc.bounded.*              BoundedDataSource permits by pool, in virtual-thread mode
+ *   db.replica.lag              ReplicaLagMonitor heartbeat lag, in read replica mode
+ *   db.routing.readonly         read-only transactions sent to the replica, or kept on the primary and why
+ */
+@Configuration
+public class MetricsConfig {
+
+  @Bean
+  public TimedAspect timedAspect(MeterRegistry registry) {
+    return new TimedAspect(registry);
+  }
+}
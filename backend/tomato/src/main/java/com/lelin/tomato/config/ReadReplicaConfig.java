@@ -0,0 +1,96 @@
+package com.lelin.tomato.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Read replica mode: set app.datasource.replica.url (username and password default to
+ * the primary's; pool settings under app.datasource.replica.hikari.*). Off by default,
+ * and then the single auto-configured DataSource is used as before.
+ *
+ * The primary pool is built from spring.datasource.* as Spring Boot would, the replica
+ * pool next to it, and the application's DataSource routes between the two
+ * (ReplicaRoutingDataSource). Locally, `docker compose --profile replica up` in infra/
+ * starts a replicating second MySQL and the replica profile points at it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.url")
+public class ReadReplicaConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean
+  @ConfigurationProperties("app.datasource.replica.hikari")
+  public HikariDataSource replicaDataSource(DataSourceProperties properties,
+      @Value("${app.datasource.replica.url}") String url,
+      @Value("${app.datasource.replica.username:}") String username,
+      @Value("${app.datasource.replica.password:}") String password) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(url);
+    dataSource.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+    dataSource.setPassword(password.isEmpty() ? properties.determinePassword() : password);
+    dataSource.setPoolName("replica");
+    dataSource.setReadOnly(true);
+    return dataSource;
+  }
+
+  @Bean
+  public ReplicaLagMonitor replicaLagMonitor(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      @Value("${app.datasource.replica.heartbeat-ms:1000}") long heartbeatMs,
+      @Value("${app.datasource.replica.max-lag-ms:2000}") long maxLagMs) {
+    return new ReplicaLagMonitor(primary, replica, heartbeatMs, maxLagMs);
+  }
+
+  @Bean
+  @Primary
+  public ReplicaRoutingDataSource dataSource(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      ReadYourWrites readYourWrites, ReplicaLagMonitor lagMonitor) {
+    return new ReplicaRoutingDataSource(primary, replica, readYourWrites, lagMonitor);
+  }
+
+  @Bean
+  public MeterBinder replicaRoutingMetrics(ReplicaRoutingDataSource routing, ReplicaLagMonitor lagMonitor) {
+    return registry -> {
+      Gauge.builder("db.replica.lag", lagMonitor,
+              m -> m.getLagMs() == Long.MAX_VALUE ? Double.NaN : m.getLagMs())
+          .description("Replica lag from the heartbeat row (NaN: unknown)")
+          .baseUnit("milliseconds")
+          .register(registry);
+      readOnlyRoutes(registry, routing, "replica", ReplicaRoutingDataSource::getToReplica);
+      readOnlyRoutes(registry, routing, "sticky", ReplicaRoutingDataSource::getStickyToPrimary);
+      readOnlyRoutes(registry, routing, "lagging", ReplicaRoutingDataSource::getLaggingToPrimary);
+    };
+  }
+
+  private static void readOnlyRoutes(MeterRegistry registry, ReplicaRoutingDataSource routing,
+      String decision, ToDoubleFunction<ReplicaRoutingDataSource> count) {
+    FunctionCounter.builder("db.routing.readonly", routing, count)
+        .description("Read-only transactions by where they went (sticky and lagging: kept on the primary)")
+        .tag("decision", decision)
+        .register(registry);
+  }
+}
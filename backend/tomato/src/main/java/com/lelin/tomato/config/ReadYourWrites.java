@@ -0,0 +1,47 @@
+package com.lelin.tomato.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Users who committed a write in the last app.datasource.replica.sticky-ms. Their
+ * read-only transactions stay on the primary until the window closes, so nobody reads
+ * a replica that may not have their own change yet. SyncService records every write
+ * transaction here after commit (every garden write takes a change version there).
+ *
+ * Kept per node: behind a load balancer without sticky sessions a user's next read
+ * can land on a node that hasn't seen their write, and only the lag bound
+ * (ReplicaLagMonitor) applies there.
+ */
+@Component
+public class ReadYourWrites {
+
+  private static final long MAX_USERS = 100_000;
+
+  private final boolean enabled;
+  private final Cache<Long, Boolean> recentWriters;
+
+  public ReadYourWrites(@Value("${app.datasource.replica.url:}") String replicaUrl,
+      @Value("${app.datasource.replica.sticky-ms:5000}") long stickyMs) {
+    this.enabled = !replicaUrl.isBlank();
+    this.recentWriters = Caffeine.newBuilder()
+        .maximumSize(MAX_USERS)
+        .expireAfterWrite(Duration.ofMillis(stickyMs))
+        .build();
+  }
+
+  public void wrote(Collection<Long> userIds) {
+    if (enabled) {
+      userIds.forEach(id -> recentWriters.put(id, Boolean.TRUE));
+    }
+  }
+
+  public boolean isSticky(Long userId) {
+    return recentWriters.getIfPresent(userId) != null;
+  }
+}
@@ -0,0 +1,83 @@
+package com.lelin.tomato.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Measures replica lag with a heartbeat row (replica_heartbeat), the way pt-heartbeat
+ * does, so it works on any replication setup and on two plain databases alike: every
+ * app.datasource.replica.heartbeat-ms it reads the stamp back from the replica and then
+ * writes a fresh one to the primary. A replica that keeps up always has a stamp at most
+ * one heartbeat old, so the lag is the stamp's age minus one heartbeat (accurate to
+ * within a heartbeat).
+ *
+ * The replica is only used while the last check succeeded, recently, and found the lag
+ * within app.datasource.replica.max-lag-ms; a failed or stalled check counts as lagging.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+  private static final int HEARTBEAT_ID = 1;
+
+  private final JdbcTemplate primary;
+  private final JdbcTemplate replica;
+  private final long heartbeatMs;
+  private final long maxLagMs;
+
+  private volatile long lagMs = Long.MAX_VALUE;
+  private volatile long checkedAtMs;
+
+  public ReplicaLagMonitor(DataSource primary, DataSource replica, long heartbeatMs, long maxLagMs) {
+    this.primary = new JdbcTemplate(primary);
+    this.replica = new JdbcTemplate(replica);
+    this.heartbeatMs = Math.max(1, heartbeatMs);
+    this.maxLagMs = maxLagMs;
+  }
+
+  @Scheduled(fixedDelayString = "${app.datasource.replica.heartbeat-ms:1000}")
+  public void check() {
+    long now = System.currentTimeMillis();
+    lagMs = measure(now);
+    checkedAtMs = now;
+    beat(now);
+  }
+
+  public boolean isReplicaUsable() {
+    // three missed checks and the last answer no longer counts
+    boolean fresh = System.currentTimeMillis() - checkedAtMs <= 3 * heartbeatMs;
+    return fresh && lagMs <= maxLagMs;
+  }
+
+  // Long.MAX_VALUE when the replica can't be read or has no heartbeat yet
+  public long getLagMs() {
+    return lagMs;
+  }
+
+  private long measure(long now) {
+    try {
+      List<Long> stamp = replica.queryForList(
+          "select beat_at_ms from replica_heartbeat where id = ?", Long.class, HEARTBEAT_ID);
+      return stamp.isEmpty() ? Long.MAX_VALUE : Math.max(0, now - stamp.getFirst() - heartbeatMs);
+    } catch (RuntimeException e) {
+      log.warn("Replica lag check failed, reads stay on the primary: {}", e.getMessage());
+      return Long.MAX_VALUE;
+    }
+  }
+
+  private void beat(long now) {
+    try {
+      if (primary.update("update replica_heartbeat set beat_at_ms = ? where id = ?", now, HEARTBEAT_ID) == 0) {
+        primary.update("insert into replica_heartbeat (id, beat_at_ms) values (?, ?)", HEARTBEAT_ID, now);
+      }
+    } catch (DuplicateKeyException e) {
+      // another node inserted it first; its stamp is as good as ours
+    } catch (RuntimeException e) {
+      log.warn("Replica heartbeat write failed: {}", e.getMessage());
+    }
+  }
+}
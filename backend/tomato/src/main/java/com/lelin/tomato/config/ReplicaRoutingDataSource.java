@@ -0,0 +1,99 @@
+package com.lelin.tomato.config;
+
+import com.lelin.tomato.security.AuthenticatedUser;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only transactions (@Transactional(readOnly = true) service methods and
+ * read-only TransactionTemplates) to the replica and everything else to the primary.
+ *
+ * The physical connection is only fetched at the first statement (hence the lazy proxy),
+ * when the transaction and its read-only flag are already set up. A read-only
+ * transaction still goes to the primary when:
+ *   - Spring Data opened it around a single repository call made outside any
+ *     transaction: logins, principal lookups and check-then-write paths read that way
+ *     and must see the latest commit
+ *   - the signed-in user wrote in the last few seconds (ReadYourWrites)
+ *   - the replica is too far behind, or its lag is unknown (ReplicaLagMonitor)
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy {
+
+  public enum Target {
+    PRIMARY,
+    REPLICA
+  }
+
+  // transaction names Spring Data gives the default transactions of repository calls
+  private static final String REPOSITORY_TX_PREFIX = SimpleJpaRepository.class.getName() + ".";
+  private static final String OWN_REPOSITORY_TX_PREFIX = "com.lelin.tomato.repository.";
+
+  private final ReadYourWrites readYourWrites;
+  private final ReplicaLagMonitor lagMonitor;
+  private final LongAdder toReplica = new LongAdder();
+  private final LongAdder stickyToPrimary = new LongAdder();
+  private final LongAdder laggingToPrimary = new LongAdder();
+
+  public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+      ReadYourWrites readYourWrites, ReplicaLagMonitor lagMonitor) {
+    this.readYourWrites = readYourWrites;
+    this.lagMonitor = lagMonitor;
+    AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+      @Override
+      protected Object determineCurrentLookupKey() {
+        return route();
+      }
+    };
+    router.setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+    router.setDefaultTargetDataSource(primary);
+    router.afterPropertiesSet();
+    setTargetDataSource(router);
+  }
+
+  Target route() {
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || isRepositoryDefault()) {
+      return Target.PRIMARY;
+    }
+    Long userId = currentUserId();
+    if (userId != null && readYourWrites.isSticky(userId)) {
+      stickyToPrimary.increment();
+      return Target.PRIMARY;
+    }
+    if (!lagMonitor.isReplicaUsable()) {
+      laggingToPrimary.increment();
+      return Target.PRIMARY;
+    }
+    toReplica.increment();
+    return Target.REPLICA;
+  }
+
+  public long getToReplica() {
+    return toReplica.sum();
+  }
+
+  public long getStickyToPrimary() {
+    return stickyToPrimary.sum();
+  }
+
+  public long getLaggingToPrimary() {
+    return laggingToPrimary.sum();
+  }
+
+  private static boolean isRepositoryDefault() {
+    String name = TransactionSynchronizationManager.getCurrentTransactionName();
+    return name != null && (name.startsWith(REPOSITORY_TX_PREFIX) || name.startsWith(OWN_REPOSITORY_TX_PREFIX));
+  }
+
+  private static Long currentUserId() {
+    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+    return auth != null && auth.getPrincipal() instanceof AuthenticatedUser user ? user.getUserId() : null;
+  }
+}
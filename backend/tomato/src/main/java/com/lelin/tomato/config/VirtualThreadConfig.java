@@ -0,0 +1,53 @@
+package com.lelin.tomato.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Virtual-thread mode: spring.threads.virtual.enabled=true (or the
+ * SPRING_THREADS_VIRTUAL_ENABLED=true environment variable). Off by default.
+ *
+ * Spring Boot itself moves Tomcat request handling, @Scheduled work and the
+ * application task executor onto virtual threads; TaskDeadlineIndex and
+ * GardenEventStream pick their own thread factories off the same property.
+ * What's left is bounding database access, since request concurrency is no
+ * longer capped by a thread pool: the DataSource is wrapped in a
+ * BoundedDataSource sized to the connection pool.
+ *
+ * Pinning: our own locks are ReentrantLocks, and the JDBC driver
+ * (Connector/J 9) and HikariCP 6 no longer block inside synchronized blocks.
+ * Run with -Djdk.tracePinnedThreads=short to check after dependency upgrades.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+  @Bean
+  static BeanPostProcessor boundedDataSourcePostProcessor(
+      @Value("${app.jdbc.max-concurrency:0}") int maxConcurrency,
+      @Value("${app.jdbc.max-waiters:1000}") int maxWaiters,
+      @Value("${app.jdbc.acquire-timeout-ms:10000}") long acquireTimeoutMs) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        // with a read replica each pool is bounded on its own, not the router in front
+        if (!(bean instanceof DataSource dataSource) || bean instanceof BoundedDataSource
+            || bean instanceof ReplicaRoutingDataSource) {
+          return bean;
+        }
+        // 0 = as many as the pool has connections
+        int permits = maxConcurrency > 0 ? maxConcurrency
+            : bean instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+        // a MeterBinder bean from here on, so its gauges are bound like any other's
+        String pool = beanName.equals("replicaDataSource") ? "replica" : "primary";
+        return new BoundedDataSource(dataSource, pool, permits, maxWaiters, acquireTimeoutMs);
+      }
+    };
+  }
+}
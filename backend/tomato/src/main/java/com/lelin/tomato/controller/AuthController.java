@@ -1,6 +1,7 @@
 package com.lelin.tomato.controller;
 
 import com.lelin.tomato.dto.LoginRequest;
+import com.lelin.tomato.dto.LoginResult;
 import com.lelin.tomato.dto.RegisterRequest;
 import com.lelin.tomato.model.User;
 import com.lelin.tomato.service.AuthService;
@@ -32,9 +33,8 @@ public class AuthController {
   }
   @PostMapping("/login")
   public ResponseEntity<?> login(@Valid @RequestBody LoginRequest request) {
-    String token = authService.login(request);
-    User user = userRepository.findByEmail(request.getEmail()).orElse(null);
-    return ResponseEntity.ok(Map.of("token", token, "user", user));
+    LoginResult result = authService.login(request);
+    return ResponseEntity.ok(Map.of("token", result.token(), "user", result.user()));
   }
 
   @GetMapping("/me")
@@ -0,0 +1,42 @@
+package com.lelin.tomato.controller;
+
+import com.lelin.tomato.dto.GardenSnapshot;
+import com.lelin.tomato.security.AuthenticatedUser;
+import com.lelin.tomato.service.GardenEventStream;
+import com.lelin.tomato.service.GardenService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/garden")
+@RequiredArgsConstructor
+public class GardenController {
+
+  private final GardenService gardenService;
+  private final GardenEventStream eventStream;
+
+  // tasks + tomato count + active punishments; 304 if If-None-Match still matches
+  @GetMapping
+  public ResponseEntity<GardenSnapshot> getGarden(AuthenticatedUser user, WebRequest request) {
+    GardenSnapshot snapshot = gardenService.getSnapshot(user.getUserId());
+
+    if (request.checkNotModified(snapshot.getVersion())) {
+      return null; // Spring has already written the 304
+    }
+    return ResponseEntity.ok()
+        .eTag(snapshot.getVersion())
+        .body(snapshot);
+  }
+
+  // Live garden changes as server-sent events. Starts with CONNECTED, or RESYNC if
+  // events after Last-Event-ID are no longer buffered (refetch GET /garden then).
+  @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter events(AuthenticatedUser user,
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+    return eventStream.subscribe(user.getUserId(), lastEventId);
+  }
+}
@@ -1,9 +1,9 @@
 package com.lelin.tomato.controller;
 
 import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.security.AuthenticatedUser;
 import com.lelin.tomato.service.PunishmentService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -15,19 +15,14 @@ public class PunishmentController {
 
   private final PunishmentService punishmentService;
 
-  private Long getLoggedInUserId() {
-    return Long.parseLong(SecurityContextHolder.getContext()
-        .getAuthentication()
-        .getName());
-  }
-
   @GetMapping
-  public List<Punishment> getAll() {
-    return punishmentService.getAllForUser(getLoggedInUserId());
+  public List<Punishment> getAll(AuthenticatedUser user,
+      @RequestParam(defaultValue = "false") boolean includeArchived) {
+    return punishmentService.getAllForUser(user.getUserId(), includeArchived);
   }
 
   @GetMapping("/active")
-  public List<Punishment> getActive() {
-    return punishmentService.getActiveForUser(getLoggedInUserId());
+  public List<Punishment> getActive(AuthenticatedUser user) {
+    return punishmentService.getActiveForUser(user.getUserId());
   }
 }
@@ -0,0 +1,22 @@
+package com.lelin.tomato.controller;
+
+import com.lelin.tomato.dto.SyncChanges;
+import com.lelin.tomato.security.AuthenticatedUser;
+import com.lelin.tomato.service.SyncService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/sync")
+@RequiredArgsConstructor
+public class SyncController {
+
+  private final SyncService syncService;
+
+  // Offline catch-up: tasks, punishments and tomatoes written after ?since=, plus tombstones
+  // for deletes. Leave since out on first sync; then send back the version from the last reply.
+  @GetMapping
+  public SyncChanges getChanges(AuthenticatedUser user, @RequestParam(required = false) Long since) {
+    return syncService.getChanges(user.getUserId(), since);
+  }
+}
@@ -1,13 +1,26 @@
 package com.lelin.tomato.controller;
 
+import com.lelin.tomato.dto.TaskBatchCreateRequest;
+import com.lelin.tomato.dto.TaskBatchResult;
+import com.lelin.tomato.dto.TaskFilter;
+import com.lelin.tomato.dto.TaskIdsRequest;
+import com.lelin.tomato.dto.TaskPage;
+import com.lelin.tomato.model.Priority;
 import com.lelin.tomato.model.Task;
+import com.lelin.tomato.security.AuthenticatedUser;
 import jakarta.validation.Valid;
+import com.lelin.tomato.service.GardenService;
+import com.lelin.tomato.service.IdempotencyStore;
 import com.lelin.tomato.service.TaskService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/tasks")
@@ -15,35 +28,124 @@ import java.util.List;
 public class TaskController {
 
   private final TaskService taskService;
+  private final GardenService gardenService;
+  private final IdempotencyStore idempotencyStore;
 
-  private Long getLoggedInUserId() {
-    return Long.parseLong(SecurityContextHolder.getContext()
-        .getAuthentication()
-        .getName());
+  // ?garden=true on a mutation returns the updated garden alongside the task,
+  // saving the client a follow-up GET /garden
+  private ResponseEntity<?> withGarden(Task task, boolean garden, Long userId) {
+    if (!garden) {
+      return ResponseEntity.ok(task);
+    }
+    return ResponseEntity.ok(Map.of("task", task, "garden", gardenService.getSnapshot(userId)));
+  }
+
+  private ResponseEntity<?> withGarden(TaskBatchResult result, boolean garden, Long userId) {
+    if (!garden) {
+      return ResponseEntity.ok(result);
+    }
+    return ResponseEntity.ok(Map.of("items", result.items(), "garden", gardenService.getSnapshot(userId)));
+  }
+
+  // Creates retried with the same Idempotency-Key header get the first result back
+  // (marked Idempotent-Replayed: true) instead of adding the tasks again.
+  private <T> ResponseEntity<?> idempotent(Long userId, String key, Object request,
+      Supplier<T> create, Function<T, ResponseEntity<?>> respond) {
+    if (key == null) {
+      return respond.apply(create.get());
+    }
+    IdempotencyStore.Outcome<T> outcome = idempotencyStore.execute(userId, key, request, create);
+    ResponseEntity<?> response = respond.apply(outcome.value());
+    if (!outcome.replayed()) {
+      return response;
+    }
+    return ResponseEntity.status(response.getStatusCode())
+        .header("Idempotent-Replayed", "true")
+        .body(response.getBody());
   }
 
   @PostMapping
-  public Task createTask(@Valid @RequestBody Task task) {
-    return taskService.createTask(task, getLoggedInUserId());
+  public ResponseEntity<?> createTask(AuthenticatedUser user, @Valid @RequestBody Task task,
+      @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    Long userId = user.getUserId();
+    return idempotent(userId, idempotencyKey, task,
+        () -> taskService.createTask(task, userId),
+        saved -> withGarden(saved, garden, userId));
   }
 
+  // Keyset-paginated listing: ?completed=&expired=&priority=&dueFrom=&dueTo=
+  // &sort=NEWEST|DUE&limit=&cursor=<nextCursor of the previous page>&includeArchived=
   @GetMapping
-  public List<Task> getTasks() {
-    return taskService.getTasks(getLoggedInUserId());
+  public TaskPage getTasks(AuthenticatedUser user,
+      @RequestParam(required = false) Boolean completed,
+      @RequestParam(required = false) Boolean expired,
+      @RequestParam(required = false) Priority priority,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dueFrom,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dueTo,
+      @RequestParam(defaultValue = "NEWEST") TaskFilter.Sort sort,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit,
+      @RequestParam(defaultValue = "false") boolean includeArchived) {
+    TaskFilter filter = TaskFilter.builder()
+        .completed(completed)
+        .expired(expired)
+        .priority(priority)
+        .dueFrom(dueFrom)
+        .dueTo(dueTo)
+        .sort(sort)
+        .includeArchived(includeArchived)
+        .build();
+    return taskService.getTaskPage(user.getUserId(), filter, cursor, limit);
   }
 
   @PutMapping("/{id}")
-  public Task updateTask(@PathVariable Long id, @Valid @RequestBody Task task) {
-    return taskService.updateTask(id, task, getLoggedInUserId());
+  public ResponseEntity<?> updateTask(AuthenticatedUser user, @PathVariable Long id,
+      @Valid @RequestBody Task task, @RequestParam(defaultValue = "false") boolean garden) {
+    return withGarden(taskService.updateTask(id, task, user.getUserId()), garden, user.getUserId());
   }
 
   @PutMapping("/{id}/complete")
-  public Task completeTask(@PathVariable Long id) {
-    return taskService.completeTask(id, getLoggedInUserId());
+  public ResponseEntity<?> completeTask(AuthenticatedUser user, @PathVariable Long id,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    return withGarden(taskService.completeTask(id, user.getUserId()), garden, user.getUserId());
   }
 
   @DeleteMapping("/{id}")
-  public void deleteTask(@PathVariable Long id) {
-    taskService.deleteTask(id, getLoggedInUserId());
+  public ResponseEntity<?> deleteTask(AuthenticatedUser user, @PathVariable Long id,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    taskService.deleteTask(id, user.getUserId());
+
+    if (!garden) {
+      return ResponseEntity.ok().build();
+    }
+    return ResponseEntity.ok(Map.of("garden", gardenService.getSnapshot(user.getUserId())));
+  }
+
+  // Batch mutations: up to app.tasks.batch-max-size items, one transaction per request,
+  // and an outcome per item (see TaskBatchResult) instead of failing the whole batch.
+  @PostMapping("/batch")
+  public ResponseEntity<?> createTasks(AuthenticatedUser user,
+      @Valid @RequestBody TaskBatchCreateRequest request,
+      @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    Long userId = user.getUserId();
+    return idempotent(userId, idempotencyKey, request,
+        () -> taskService.createTasks(request.tasks(), userId),
+        result -> withGarden(result, garden, userId));
+  }
+
+  @PostMapping("/batch/complete")
+  public ResponseEntity<?> completeTasks(AuthenticatedUser user,
+      @Valid @RequestBody TaskIdsRequest request,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    return withGarden(taskService.completeTasks(request.ids(), user.getUserId()), garden, user.getUserId());
+  }
+
+  @PostMapping("/batch/delete")
+  public ResponseEntity<?> deleteTasks(AuthenticatedUser user,
+      @Valid @RequestBody TaskIdsRequest request,
+      @RequestParam(defaultValue = "false") boolean garden) {
+    return withGarden(taskService.deleteTasks(request.ids(), user.getUserId()), garden, user.getUserId());
   }
 }
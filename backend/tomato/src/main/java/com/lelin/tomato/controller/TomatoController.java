@@ -1,11 +1,18 @@
 package com.lelin.tomato.controller;
 
+import com.lelin.tomato.dto.TomatoSeries;
 import com.lelin.tomato.model.Tomato;
+import com.lelin.tomato.security.AuthenticatedUser;
 import com.lelin.tomato.service.TomatoService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -15,19 +22,44 @@ public class TomatoController {
 
   private final TomatoService tomatoService;
 
-  private Long getLoggedInUserId() {
-    return Long.parseLong(SecurityContextHolder.getContext()
-        .getAuthentication()
-        .getName());
-  }
-
   @GetMapping("/count")
-  public long getCount() {
-    return tomatoService.getTomatoCount(getLoggedInUserId());
+  public long getCount(AuthenticatedUser user) {
+    return tomatoService.getTomatoCount(user.getUserId());
   }
 
   @GetMapping("/history")
-  public List<Tomato> getHistory() {
-    return tomatoService.getTomatoHistory(getLoggedInUserId());
+  public List<Tomato> getHistory(AuthenticatedUser user) {
+    return tomatoService.getTomatoHistory(user.getUserId());
+  }
+
+  // Chart data from the daily rollup: ?bucket=DAY|WEEK|MONTH&from=&to= (ISO dates, to exclusive).
+  // Defaults to the last 30 days, by day.
+  @GetMapping("/series")
+  public TomatoSeries getSeries(AuthenticatedUser user,
+      @RequestParam(defaultValue = "DAY") TomatoSeries.Bucket bucket,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+    LocalDate end = to != null ? to : LocalDate.now().plusDays(1);
+    LocalDate start = from != null ? from : end.minusDays(30);
+    return tomatoService.getSeries(user.getUserId(), bucket, start, end);
+  }
+
+  // Streaming export: NDJSON, one tomato per line, newest first.
+  // ?from=&to= (ISO date-times, to exclusive) and ?limit= are all optional.
+  @GetMapping(value = "/history/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportHistory(AuthenticatedUser user,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+      @RequestParam(required = false) Integer limit) {
+    // checked up front: once the body starts streaming the status is already 200
+    if (limit != null && limit < 1) {
+      throw new RuntimeException("limit must be at least 1");
+    }
+
+    Long userId = user.getUserId();
+    StreamingResponseBody body = out -> tomatoService.exportHistory(userId, from, to, limit, out);
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(body);
   }
 }
@@ -3,14 +3,14 @@ package com.lelin.tomato.controller;
 import com.lelin.tomato.dto.UpdateUsernameRequest;
 import com.lelin.tomato.model.User;
 import com.lelin.tomato.repository.UserRepository;
-import com.lelin.tomato.security.JWTUtil;
+import com.lelin.tomato.security.AuthenticatedUser;
+import com.lelin.tomato.security.PrincipalCache;
 import jakarta.validation.Valid;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -20,21 +20,14 @@ import org.springframework.web.bind.annotation.RestController;
 public class UserController {
 
   private final UserRepository userRepository;
-  private final JWTUtil jwtUtil;
+  private final PrincipalCache principalCache;
 
   @PatchMapping("/me/username")
   public ResponseEntity<?> updateUsername(
-      @RequestHeader(value = "Authorization", required = false) String authorization,
+      AuthenticatedUser principal,
       @Valid @RequestBody UpdateUsernameRequest request) {
 
-    if (authorization == null || !authorization.startsWith("Bearer ")) {
-      return ResponseEntity.status(401).body(Map.of("error", "Missing token"));
-    }
-
-    String token = authorization.substring(7);
-    Long userId = jwtUtil.extractUserId(token);
-
-    return userRepository.findById(userId)
+    return userRepository.findById(principal.getUserId())
         .<ResponseEntity<?>>map(user -> applyUsernameUpdate(user, request))
         .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error", "User not found")));
   }
@@ -48,6 +41,8 @@ public class UserController {
 
     user.setUsername(desiredUsername);
     User saved = userRepository.save(user);
+    // the cached principal still carries the old username
+    principalCache.invalidate(saved.getId());
     return ResponseEntity.ok(Map.of("message", "Username updated", "user", saved));
   }
 }
@@ -0,0 +1,5 @@
+package com.lelin.tomato.dto;
+
+// A row HistoryArchiver is about to move, with its owner (whose row lock it takes first)
+public record ArchiveCandidate(Long id, Long userId) {
+}
@@ -0,0 +1,7 @@
+package com.lelin.tomato.dto;
+
+import java.time.LocalDate;
+
+// Tomatoes per calendar day, for adjusting and reading the daily rollup
+public record DailyCount(LocalDate day, long tomatoes) {
+}
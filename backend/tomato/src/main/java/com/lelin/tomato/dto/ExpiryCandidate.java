@@ -0,0 +1,7 @@
+package com.lelin.tomato.dto;
+
+import java.time.LocalDateTime;
+
+// Just enough of an overdue task to expire it, punish its owner and measure how late it was
+public record ExpiryCandidate(Long id, Long userId, LocalDateTime dueTime) {
+}
@@ -0,0 +1,18 @@
+package com.lelin.tomato.dto;
+
+// Something in a user's garden changed. Published as a Spring application event by
+// the services and pushed to the user's SSE stream once the transaction commits.
+public record GardenEvent(Long userId, Type type, Object data) {
+
+  public enum Type {
+    TASK_CREATED,
+    TASK_UPDATED,
+    TASK_COMPLETED,
+    TASK_DELETED,
+    TASK_EXPIRED,
+    PUNISHMENT_CREATED,
+    PUNISHMENT_RESOLVED,
+    TOMATO_EARNED,
+    TOMATO_REMOVED
+  }
+}
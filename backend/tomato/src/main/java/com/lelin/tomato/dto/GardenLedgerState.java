@@ -0,0 +1,24 @@
+package com.lelin.tomato.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+// A user's garden as folded from the ledger (GardenLedger.apply): open tasks, the
+// open ones past their deadline, tomatoes and active punishments.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GardenLedgerState {
+
+  private Set<Long> openTaskIds = new TreeSet<>();
+
+  private Set<Long> overdueTaskIds = new TreeSet<>();
+
+  private long tomatoCount;
+
+  private int activePunishments;
+}
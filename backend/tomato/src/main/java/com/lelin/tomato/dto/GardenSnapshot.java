@@ -0,0 +1,30 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.Task;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Everything the dashboard needs, read in one go
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GardenSnapshot {
+
+  // open tasks only; completed history is paged from GET /tasks?completed=true
+  private List<Task> tasks;
+
+  private long tomatoCount;
+
+  private int infestationLevel;
+
+  private List<Punishment> activePunishments;
+
+  // changes whenever anything above changes; sent as the ETag
+  private String version;
+}
@@ -0,0 +1,7 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.User;
+
+// The token plus the user it was issued for, so /auth/login needs a single lookup
+public record LoginResult(String token, User user) {
+}
@@ -0,0 +1,23 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.SyncTombstone;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.Tomato;
+
+import java.util.List;
+
+// GET /sync: everything written after ?since=, plus what was deleted. Pass version back as
+// the next since. resync means the lists are the full state and replace the client's copy
+// (first sync, or since is older than the tombstones we still keep).
+public record SyncChanges(
+    long version,
+    boolean resync,
+    List<Task> tasks,
+    List<Punishment> punishments,
+    List<Tomato> tomatoes,
+    List<Deleted> deleted) {
+
+  public record Deleted(SyncTombstone.Type type, Long id) {
+  }
+}
@@ -0,0 +1,11 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Task;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+// Body of POST /tasks/batch. Tasks are checked one by one (see TaskBatchResult),
+// so an invalid item doesn't fail the others.
+public record TaskBatchCreateRequest(@NotEmpty(message = "tasks is required") List<Task> tasks) {
+}
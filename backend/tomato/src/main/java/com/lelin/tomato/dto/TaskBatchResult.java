@@ -0,0 +1,34 @@
+package com.lelin.tomato.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.lelin.tomato.model.Task;
+
+import java.util.List;
+
+// Outcome of a /tasks/batch request, one item per request element and in the same order.
+// NOT_FOUND also covers tasks that belong to someone else: ownership is part of the
+// lookup (one IN query restricted to the caller's tasks).
+public record TaskBatchResult(List<Item> items) {
+
+  public enum Status {
+    CREATED,
+    COMPLETED,
+    ALREADY_COMPLETED,
+    DELETED,
+    NOT_FOUND,
+    INVALID
+  }
+
+  // task is set for CREATED, COMPLETED and ALREADY_COMPLETED; error for INVALID
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public record Item(int index, Long id, Status status, Task task, String error) {
+
+    public static Item of(int index, Long id, Status status, Task task) {
+      return new Item(index, id, status, task, null);
+    }
+
+    public static Item invalid(int index, String error) {
+      return new Item(index, null, Status.INVALID, null, error);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Task;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Keyset position of the last task on a page: its id, plus its dueTime for the DUE sort.
+// Opaque to clients (base64url of "id" or "id|dueTime").
+public record TaskCursor(Long id, LocalDateTime dueTime) {
+
+  public static TaskCursor after(Task task, TaskFilter.Sort sort) {
+    return new TaskCursor(task.getId(), sort == TaskFilter.Sort.DUE ? task.getDueTime() : null);
+  }
+
+  public String encode() {
+    String raw = dueTime == null ? id.toString() : id + "|" + dueTime;
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static TaskCursor decode(String cursor, TaskFilter.Sort sort) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      String[] parts = raw.split("\\|", 2);
+      Long id = Long.parseLong(parts[0]);
+
+      if (sort == TaskFilter.Sort.DUE) {
+        return new TaskCursor(id, LocalDateTime.parse(parts[1]));
+      }
+      return new TaskCursor(id, null);
+    } catch (RuntimeException e) {
+      throw new RuntimeException("Invalid cursor");
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Priority;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Server-side filters for GET /tasks; a null field matches everything
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskFilter {
+
+  public enum Sort {
+    // newest first (by id); works on every task
+    NEWEST,
+    // soonest dueTime first; only tasks that have a dueTime
+    DUE
+  }
+
+  private Boolean completed;
+
+  private Boolean expired;
+
+  private Priority priority;
+
+  private LocalDateTime dueFrom;
+
+  private LocalDateTime dueTo;
+
+  @Builder.Default
+  private Sort sort = Sort.NEWEST;
+
+  // also page through tasks HistoryArchiver has moved to tasks_archive
+  private boolean includeArchived;
+}
@@ -0,0 +1,9 @@
+package com.lelin.tomato.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+// Body of POST /tasks/batch/complete and /tasks/batch/delete
+public record TaskIdsRequest(@NotEmpty(message = "ids is required") List<Long> ids) {
+}
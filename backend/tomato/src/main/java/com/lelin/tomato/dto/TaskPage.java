@@ -0,0 +1,9 @@
+package com.lelin.tomato.dto;
+
+import com.lelin.tomato.model.Task;
+
+import java.util.List;
+
+// One page of GET /tasks; pass nextCursor back as ?cursor= for the next one (null on the last page)
+public record TaskPage(List<Task> items, String nextCursor) {
+}
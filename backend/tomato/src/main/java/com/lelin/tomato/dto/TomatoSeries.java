@@ -0,0 +1,18 @@
+package com.lelin.tomato.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Tomatoes per day, week (starting Monday) or month; every bucket in the range is present,
+// empty ones with 0
+public record TomatoSeries(Bucket bucket, LocalDate from, LocalDate to, List<Point> points) {
+
+  public enum Bucket {
+    DAY,
+    WEEK,
+    MONTH
+  }
+
+  public record Point(LocalDate start, long tomatoes) {
+  }
+}
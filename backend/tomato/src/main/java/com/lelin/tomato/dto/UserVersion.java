@@ -0,0 +1,9 @@
+package com.lelin.tomato.dto;
+
+// A user's sync state (SyncService): the last change version handed out and the tombstone floor
+public record UserVersion(Long userId, long version, long syncFloor) {
+
+  public UserVersion(Long userId, long version) {
+    this(userId, version, 0);
+  }
+}
@@ -0,0 +1,64 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// A resolved punishment moved out of the hot punishments table by HistoryArchiver.
+// Same id and columns as it had there; only read back for ?includeArchived=true.
+@Entity
+@Table(
+    name = "punishments_archive",
+    indexes = @Index(name = "idx_punishments_archive_user", columnList = "userId"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedPunishment {
+
+  @Id
+  private Long id;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  @Column(nullable = false)
+  private Long taskId;
+
+  @Column(nullable = false)
+  private LocalDateTime createdAt;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private PunishmentType type;
+
+  @Column(nullable = false)
+  private boolean resolved;
+
+  private Long resolvedByTaskId;
+
+  private LocalDateTime resolvedAt;
+
+  @Column(nullable = false)
+  private long changeVersion;
+
+  @Column(nullable = false)
+  private LocalDateTime archivedAt;
+
+  // as the API has always shown it
+  public Punishment toPunishment() {
+    return Punishment.builder()
+        .id(id)
+        .userId(userId)
+        .taskId(taskId)
+        .createdAt(createdAt)
+        .type(type)
+        .resolved(resolved)
+        .resolvedByTaskId(resolvedByTaskId)
+        .resolvedAt(resolvedAt)
+        .changeVersion(changeVersion)
+        .build();
+  }
+}
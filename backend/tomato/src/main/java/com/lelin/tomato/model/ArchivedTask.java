@@ -0,0 +1,84 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// A completed task moved out of the hot tasks table by HistoryArchiver. Same id and
+// columns as it had there; only read back for ?includeArchived=true.
+@Entity
+@Table(
+    name = "tasks_archive",
+    indexes = {
+        // GET /tasks?includeArchived=true, newest first
+        @Index(name = "idx_tasks_archive_user", columnList = "userId"),
+        // the same by due time
+        @Index(name = "idx_tasks_archive_user_due", columnList = "userId, dueTime")
+    })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedTask {
+
+  @Id
+  private Long id;
+
+  @Column(nullable = false)
+  private String title;
+
+  private String description;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private Priority priority;
+
+  @Column(nullable = false)
+  private LocalDateTime createdAt;
+
+  private LocalDateTime dueTime;
+
+  private LocalDateTime completedAt;
+
+  @Column(nullable = false)
+  private boolean expired;
+
+  @Column(nullable = false)
+  private boolean timeBombEnabled;
+
+  @Column(nullable = false)
+  private boolean completed;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  @Column(nullable = false)
+  private int tomatoesEarned;
+
+  @Column(nullable = false)
+  private long changeVersion;
+
+  @Column(nullable = false)
+  private LocalDateTime archivedAt;
+
+  // as the API has always shown it
+  public Task toTask() {
+    return Task.builder()
+        .id(id)
+        .title(title)
+        .description(description)
+        .priority(priority)
+        .createdAt(createdAt)
+        .dueTime(dueTime)
+        .completedAt(completedAt)
+        .expired(expired)
+        .timeBombEnabled(timeBombEnabled)
+        .completed(completed)
+        .userId(userId)
+        .tomatoesEarned(tomatoesEarned)
+        .changeVersion(changeVersion)
+        .build();
+  }
+}
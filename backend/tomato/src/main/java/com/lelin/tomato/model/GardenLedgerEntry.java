@@ -0,0 +1,48 @@
+package com.lelin.tomato.model;
+
+import com.lelin.tomato.dto.GardenEvent;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// One garden change, appended in the transaction that made it and never updated
+// or deleted. seq counts each user's entries from 1 (see GardenLedger).
+@Entity
+@Table(
+    name = "garden_ledger",
+    uniqueConstraints = @UniqueConstraint(name = "uk_garden_ledger_user_seq", columnNames = {"userId", "seq"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GardenLedgerEntry {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  @Column(nullable = false)
+  private long seq;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 32)
+  private GardenEvent.Type type;
+
+  // the task it concerns; null for a tomato revocation spanning several tasks
+  private Long taskId;
+
+  // the tomato or punishment row, when it had an id yet (batch inserts don't)
+  private Long refId;
+
+  // tomatoes earned or revoked; 1 for everything else
+  @Column(nullable = false)
+  private int amount;
+
+  @Column(nullable = false)
+  private LocalDateTime occurredAt;
+}
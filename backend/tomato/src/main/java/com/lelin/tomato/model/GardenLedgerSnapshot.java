@@ -0,0 +1,39 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// A user's folded garden state as of ledger entry seq, stored as GardenLedgerState JSON.
+// The first one per user is the baseline taken from the live rows when the ledger
+// started for them; later ones are written every app.ledger.snapshot-every entries.
+@Entity
+@Table(
+    name = "garden_ledger_snapshots",
+    uniqueConstraints = @UniqueConstraint(name = "uk_garden_ledger_snapshots_user_seq",
+        columnNames = {"userId", "seq"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GardenLedgerSnapshot {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  @Column(nullable = false)
+  private long seq;
+
+  @Lob
+  @Column(nullable = false)
+  private String state;
+
+  @Column(nullable = false)
+  private LocalDateTime createdAt;
+}
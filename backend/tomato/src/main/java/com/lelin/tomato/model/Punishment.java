@@ -1,11 +1,22 @@
 package com.lelin.tomato.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "punishments")
+@Table(
+    name = "punishments",
+    indexes = {
+        // findByUserId*, active punishments and the oldest one to resolve
+        @Index(name = "idx_punishments_user_resolved_created",
+            columnList = "userId, resolved, createdAt"),
+        // GET /sync
+        @Index(name = "idx_punishments_user_version", columnList = "userId, changeVersion"),
+        // HistoryArchiver: resolved long enough ago (createdAt for rows from before resolvedAt)
+        @Index(name = "idx_punishments_resolved_at", columnList = "resolved, resolvedAt, createdAt")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -37,4 +48,16 @@ public class Punishment {
 
   // Which task completion cleared this punishment (optional)
   private Long resolvedByTaskId;
+
+  private LocalDateTime resolvedAt;
+
+  // user's change version at this row's last write; GET /sync?since= reads by it (see SyncService)
+  @Column(nullable = false)
+  private long changeVersion;
+
+  // optimistic lock: a write based on a stale read fails and is retried (ConflictRetry)
+  @JsonIgnore
+  @Version
+  @Column(nullable = false)
+  private long version;
 }
@@ -5,5 +5,12 @@ public enum PunishmentType {
   BUG,
   FUNGUS,
   FOG,
-  WILTED_LEAVES
-}
\ No newline at end of file
+  WILTED_LEAVES;
+
+  private static final PunishmentType[] TYPES = values();
+
+  // the one a newly expired task inflicts
+  public static PunishmentType random() {
+    return TYPES[(int)(Math.random() * TYPES.length)];
+  }
+}
@@ -0,0 +1,23 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// A single row (id 1) that ReplicaLagMonitor stamps on the primary and reads back from
+// the replica; how old the replica's copy is, is how far behind the replica is.
+@Entity
+@Table(name = "replica_heartbeat")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReplicaHeartbeat {
+
+  @Id
+  private Integer id;
+
+  // epoch millis of the writer's clock
+  @Column(nullable = false)
+  private Long beatAtMs;
+}
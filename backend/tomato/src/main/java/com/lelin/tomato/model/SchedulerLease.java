@@ -0,0 +1,29 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "scheduler_leases")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SchedulerLease {
+
+  // userId % partitions this lease covers
+  @Id
+  private Integer partitionId;
+
+  // node currently holding the partition (null = free)
+  private String owner;
+
+  // lease is only valid until this time unless renewed
+  private LocalDateTime leaseUntil;
+
+  public boolean isHeldAt(LocalDateTime now) {
+    return owner != null && leaseUntil != null && leaseUntil.isAfter(now);
+  }
+}
@@ -0,0 +1,22 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "scheduler_nodes")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SchedulerNode {
+
+  @Id
+  private String nodeId;
+
+  // heartbeat, refreshed on every scheduler run
+  @Column(nullable = false)
+  private LocalDateTime lastSeen;
+}
@@ -0,0 +1,51 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// A deleted task, tomato or punishment, kept so GET /sync can tell offline clients to
+// drop it. Pruned after app.sync.tombstone-retention-days (see SyncService).
+@Entity
+@Table(
+    name = "sync_tombstones",
+    indexes = {
+        // GET /sync
+        @Index(name = "idx_sync_tombstones_user_version", columnList = "userId, changeVersion"),
+        // pruning
+        @Index(name = "idx_sync_tombstones_deleted", columnList = "deletedAt")
+    })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncTombstone {
+
+  public enum Type {
+    TASK,
+    TOMATO,
+    PUNISHMENT
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false)
+  private Type entityType;
+
+  @Column(nullable = false)
+  private Long entityId;
+
+  @Column(nullable = false)
+  private long changeVersion;
+
+  @Column(nullable = false)
+  private LocalDateTime deletedAt;
+}
@@ -1,6 +1,7 @@
 package com.lelin.tomato.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
@@ -8,7 +9,24 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tasks")
+@Table(
+    name = "tasks",
+    indexes = {
+        // findByUserId, GET /tasks newest first
+        @Index(name = "idx_tasks_user", columnList = "userId"),
+        // GET /tasks newest first, open or completed only
+        @Index(name = "idx_tasks_user_completed", columnList = "userId, completed"),
+        // GET /tasks by due time, all or open/completed only
+        @Index(name = "idx_tasks_user_due", columnList = "userId, dueTime"),
+        @Index(name = "idx_tasks_user_completed_due", columnList = "userId, completed, dueTime"),
+        // scheduler: overdue chunks and upcoming deadlines
+        @Index(name = "idx_tasks_time_bomb",
+            columnList = "timeBombEnabled, completed, expired, dueTime"),
+        // GET /sync
+        @Index(name = "idx_tasks_user_version", columnList = "userId, changeVersion"),
+        // HistoryArchiver: completed long enough ago
+        @Index(name = "idx_tasks_completed_at", columnList = "completed, completedAt")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -55,4 +73,14 @@ public class Task {
 
   @Column(nullable = false)
   private int tomatoesEarned = 0;
-}
\ No newline at end of file
+
+  // user's change version at this row's last write; GET /sync?since= reads by it (see SyncService)
+  @Column(nullable = false)
+  private long changeVersion;
+
+  // optimistic lock: a write based on a stale read fails and is retried (ConflictRetry)
+  @JsonIgnore
+  @Version
+  @Column(nullable = false)
+  private long version;
+}
@@ -5,7 +5,16 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tomatoes")
+@Table(
+    name = "tomatoes",
+    indexes = {
+        // countByUserId and history ordered by timestamp
+        @Index(name = "idx_tomatoes_user_timestamp", columnList = "userId, timestamp"),
+        // per-task lookups when a completed task is deleted
+        @Index(name = "idx_tomatoes_user_task", columnList = "userId, taskId"),
+        // GET /sync
+        @Index(name = "idx_tomatoes_user_version", columnList = "userId, changeVersion")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -25,4 +34,8 @@ public class Tomato {
 
   @Column(nullable = false)
   private LocalDateTime timestamp = LocalDateTime.now();
+
+  // user's change version at this row's last write; GET /sync?since= reads by it (see SyncService)
+  @Column(nullable = false)
+  private long changeVersion;
 }
@@ -0,0 +1,37 @@
+package com.lelin.tomato.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+// Tomatoes earned per user per day, kept in step with the tomatoes table so
+// charts read a handful of rows instead of the raw history
+@Entity
+@Table(
+    name = "tomato_daily",
+    uniqueConstraints = {
+        // upsert target, and range reads of a user's days in order
+        @UniqueConstraint(name = "uk_tomato_daily_user_day", columnNames = {"userId", "bucket_day"})
+    })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TomatoDaily {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long userId;
+
+  // DAY is a keyword in H2 and MySQL, hence the column name
+  @Column(name = "bucket_day", nullable = false)
+  private LocalDate day;
+
+  @Column(nullable = false)
+  private long tomatoes;
+}
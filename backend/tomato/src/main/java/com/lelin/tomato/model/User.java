@@ -31,8 +31,36 @@ public class User {
 
   private LocalDateTime createdAt;
 
-  // future: infestation, garden level, etc.
-  @Column(nullable = false)
+  public static final int MAX_INFESTATION_LEVEL = 5;
+
+  // Denormalized garden counters, kept in step with the tomatoes and punishments
+  // tables by TomatoService / PunishmentService and repaired by GardenCounterReconciler.
+  // Like the sync versions below they only move through UserRepository's bulk updates:
+  // saving a loaded User (a username change) must not write back stale counts.
+
+  // active punishments, capped at MAX_INFESTATION_LEVEL
+  @Column(nullable = false, updatable = false)
   private int infestationLevel = 0;
+
+  @Builder.Default
+  @Column(nullable = false, updatable = false)
+  private long tomatoCount = 0;
+
+  @Builder.Default
+  @Column(nullable = false, updatable = false)
+  private int activePunishmentCount = 0;
+
+  // Delta sync (SyncService): the last change version handed out for this user, and the
+  // newest version whose tombstones have been pruned. Only moved by UserRepository's
+  // bulk updates, never by saving the entity.
+  @Builder.Default
+  @JsonIgnore
+  @Column(nullable = false, updatable = false)
+  private long changeVersion = 0;
+
+  @Builder.Default
+  @JsonIgnore
+  @Column(nullable = false, updatable = false)
+  private long syncFloor = 0;
 }
 
@@ -0,0 +1,31 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.dto.ArchiveCandidate;
+import com.lelin.tomato.model.ArchivedPunishment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ArchivedPunishmentRepository extends JpaRepository<ArchivedPunishment, Long> {
+
+  List<ArchivedPunishment> findByUserId(Long userId);
+
+  // one INSERT ... SELECT; PunishmentRepository.deleteArchived removes the same rows after
+  @Modifying
+  @Query("insert into ArchivedPunishment (id, userId, taskId, createdAt, type, resolved, "
+      + "resolvedByTaskId, resolvedAt, changeVersion, archivedAt) "
+      + "select p.id, p.userId, p.taskId, p.createdAt, p.type, p.resolved, "
+      + "p.resolvedByTaskId, p.resolvedAt, p.changeVersion, local datetime "
+      + "from Punishment p where p.id in :ids and " + PunishmentRepository.ARCHIVABLE)
+  int copyFromLive(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+
+  // which of ids the copy above actually moved, for HistoryArchiver's sync tombstones
+  @Query("select new com.lelin.tomato.dto.ArchiveCandidate(p.id, p.userId) from ArchivedPunishment p "
+      + "where p.id in :ids")
+  List<ArchiveCandidate> findMoved(@Param("ids") Collection<Long> ids);
+}
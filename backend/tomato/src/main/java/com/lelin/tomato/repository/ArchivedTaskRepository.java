@@ -0,0 +1,59 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.dto.ArchiveCandidate;
+import com.lelin.tomato.model.ArchivedTask;
+import com.lelin.tomato.model.Priority;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ArchivedTaskRepository extends JpaRepository<ArchivedTask, Long> {
+
+  // one INSERT ... SELECT; TaskRepository.deleteArchived removes the same rows after
+  @Modifying
+  @Query("insert into ArchivedTask (id, title, description, priority, createdAt, dueTime, completedAt, "
+      + "expired, timeBombEnabled, completed, userId, tomatoesEarned, changeVersion, archivedAt) "
+      + "select t.id, t.title, t.description, t.priority, t.createdAt, t.dueTime, t.completedAt, "
+      + "t.expired, t.timeBombEnabled, t.completed, t.userId, t.tomatoesEarned, t.changeVersion, "
+      + "local datetime "
+      + "from Task t where t.id in :ids and t.completed = true and t.completedAt < :cutoff")
+  int copyFromLive(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+
+  // which of ids the copy above actually moved, for HistoryArchiver's sync tombstones
+  @Query("select new com.lelin.tomato.dto.ArchiveCandidate(t.id, t.userId) from ArchivedTask t "
+      + "where t.id in :ids")
+  List<ArchiveCandidate> findMoved(@Param("ids") Collection<Long> ids);
+
+  // The GET /tasks keyset pages over the archive, merged with the live ones in TaskService
+  @Query("select t from ArchivedTask t where t.userId = :userId and t.id < :beforeId "
+      + TaskRepository.PAGE_FILTERS
+      + "order by t.id desc")
+  List<ArchivedTask> findPageNewest(@Param("userId") Long userId,
+      @Param("beforeId") Long beforeId,
+      @Param("completed") Boolean completed,
+      @Param("expired") Boolean expired,
+      @Param("priority") Priority priority,
+      @Param("dueFrom") LocalDateTime dueFrom,
+      @Param("dueTo") LocalDateTime dueTo,
+      Pageable page);
+
+  @Query("select t from ArchivedTask t where t.userId = :userId "
+      + "and t.dueTime >= :afterDue and (t.dueTime > :afterDue or t.id > :afterId) "
+      + TaskRepository.PAGE_FILTERS
+      + "order by t.dueTime, t.id")
+  List<ArchivedTask> findPageByDue(@Param("userId") Long userId,
+      @Param("afterDue") LocalDateTime afterDue,
+      @Param("afterId") Long afterId,
+      @Param("completed") Boolean completed,
+      @Param("expired") Boolean expired,
+      @Param("priority") Priority priority,
+      @Param("dueFrom") LocalDateTime dueFrom,
+      @Param("dueTo") LocalDateTime dueTo,
+      Pageable page);
+}
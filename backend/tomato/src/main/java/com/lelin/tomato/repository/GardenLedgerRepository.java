@@ -0,0 +1,18 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.GardenLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface GardenLedgerRepository extends JpaRepository<GardenLedgerEntry, Long> {
+
+  @Query("select coalesce(max(e.seq), 0) from GardenLedgerEntry e where e.userId = :userId")
+  long findMaxSeq(@Param("userId") Long userId);
+
+  // the tail after a snapshot, in the order it happened
+  @Query("select e from GardenLedgerEntry e where e.userId = :userId and e.seq > :afterSeq order by e.seq")
+  List<GardenLedgerEntry> findTail(@Param("userId") Long userId, @Param("afterSeq") long afterSeq);
+}
@@ -0,0 +1,27 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.GardenLedgerSnapshot;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface GardenLedgerSnapshotRepository extends JpaRepository<GardenLedgerSnapshot, Long> {
+
+  Optional<GardenLedgerSnapshot> findFirstByUserIdOrderBySeqDesc(Long userId);
+
+  // the baseline a replay starts from
+  Optional<GardenLedgerSnapshot> findFirstByUserIdOrderBySeqAsc(Long userId);
+
+  @Modifying
+  @Query("delete from GardenLedgerSnapshot s where s.userId = :userId and s.seq > :afterSeq")
+  int deleteAfter(@Param("userId") Long userId, @Param("afterSeq") long afterSeq);
+
+  // every user with a ledger, in id order, a page at a time
+  @Query("select distinct s.userId from GardenLedgerSnapshot s where s.userId > :afterId order by s.userId")
+  List<Long> findUserIdsAfter(@Param("afterId") long afterId, Pageable page);
+}
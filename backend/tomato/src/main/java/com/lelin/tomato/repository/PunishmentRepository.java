@@ -1,8 +1,15 @@
 package com.lelin.tomato.repository;
 
+import com.lelin.tomato.dto.ArchiveCandidate;
 import com.lelin.tomato.model.Punishment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,7 +19,31 @@ public interface PunishmentRepository extends JpaRepository<Punishment, Long> {
 
   List<Punishment> findByUserIdAndResolvedFalse(Long userId);
 
+  long countByUserIdAndResolvedFalse(Long userId);
+
   List<Punishment> findByUserIdAndResolvedFalseOrderByCreatedAtAsc(Long userId);
 
   Optional<Punishment> findFirstByUserIdAndResolvedFalseOrderByCreatedAtAsc(Long userId);
+
+  // the n oldest, for resolving several at once
+  List<Punishment> findByUserIdAndResolvedFalseOrderByCreatedAtAsc(Long userId, Pageable page);
+
+  // GET /sync
+  @Query("select p from Punishment p where p.userId = :userId and p.changeVersion > :since")
+  List<Punishment> findChangedSince(@Param("userId") Long userId, @Param("since") long since);
+
+  // ----- archival (HistoryArchiver) -----
+
+  // Resolved before the cutoff; rows resolved before resolvedAt existed go by createdAt.
+  // Both are ranges on idx_punishments_resolved_at (NULLs sort first).
+  String ARCHIVABLE = "p.resolved = true and (p.resolvedAt < :cutoff "
+      + "or (p.resolvedAt is null and p.createdAt < :cutoff))";
+
+  @Query("select new com.lelin.tomato.dto.ArchiveCandidate(p.id, p.userId) from Punishment p "
+      + "where " + ARCHIVABLE)
+  List<ArchiveCandidate> findArchivable(@Param("cutoff") LocalDateTime cutoff, Pageable page);
+
+  @Modifying
+  @Query("delete from Punishment p where p.id in :ids and " + ARCHIVABLE)
+  int deleteArchived(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
 }
\ No newline at end of file
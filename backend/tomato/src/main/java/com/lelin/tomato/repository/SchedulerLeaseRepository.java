@@ -0,0 +1,30 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, Integer> {
+
+  // succeeds (returns 1) only if the partition is free, expired, or already ours
+  @Modifying
+  @Transactional
+  @Query("update SchedulerLease l set l.owner = :owner, l.leaseUntil = :until "
+      + "where l.partitionId = :partitionId "
+      + "and (l.owner is null or l.owner = :owner or l.leaseUntil is null or l.leaseUntil < :now)")
+  int tryClaim(@Param("partitionId") Integer partitionId,
+      @Param("owner") String owner,
+      @Param("now") LocalDateTime now,
+      @Param("until") LocalDateTime until);
+
+  @Modifying
+  @Transactional
+  @Query("update SchedulerLease l set l.owner = null, l.leaseUntil = null "
+      + "where l.partitionId = :partitionId and l.owner = :owner")
+  int release(@Param("partitionId") Integer partitionId, @Param("owner") String owner);
+}
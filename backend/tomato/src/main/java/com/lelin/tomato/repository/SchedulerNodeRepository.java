@@ -0,0 +1,15 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.SchedulerNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface SchedulerNodeRepository extends JpaRepository<SchedulerNode, String> {
+
+  long countByLastSeenAfter(LocalDateTime since);
+
+  @Transactional
+  void deleteByLastSeenBefore(LocalDateTime cutoff);
+}
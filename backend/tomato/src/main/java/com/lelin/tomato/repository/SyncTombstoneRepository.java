@@ -0,0 +1,22 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.dto.SyncChanges;
+import com.lelin.tomato.model.SyncTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SyncTombstoneRepository extends JpaRepository<SyncTombstone, Long> {
+
+  @Query("select new com.lelin.tomato.dto.SyncChanges$Deleted(s.entityType, s.entityId) "
+      + "from SyncTombstone s where s.userId = :userId and s.changeVersion > :since")
+  List<SyncChanges.Deleted> findDeletedSince(@Param("userId") Long userId, @Param("since") long since);
+
+  @Modifying
+  @Query("delete from SyncTombstone s where s.deletedAt < :cutoff")
+  int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
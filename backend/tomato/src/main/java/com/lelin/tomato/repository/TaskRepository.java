@@ -1,7 +1,20 @@
 package com.lelin.tomato.repository;
 
+import com.lelin.tomato.dto.ArchiveCandidate;
+import com.lelin.tomato.dto.ExpiryCandidate;
+import com.lelin.tomato.model.Priority;
 import com.lelin.tomato.model.Task;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 import java.util.List;
 import java.time.LocalDateTime;
 
@@ -9,5 +22,131 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
 
   // get all tasks owned by user
   List<Task> findByUserId(Long userId);
-  List<Task> findByTimeBombEnabledTrueAndCompletedFalseAndExpiredFalseAndDueTimeBefore(LocalDateTime now);
+
+  // the garden: open tasks only (idx_tasks_user_completed), completed ones are paged
+  List<Task> findByUserIdAndCompletedFalse(Long userId);
+
+  // GardenLedger baseline: open tasks, and the open ones already expired
+  @Query("select t.id from Task t where t.userId = :userId and t.completed = false")
+  List<Long> findOpenIds(@Param("userId") Long userId);
+
+  @Query("select t.id from Task t where t.userId = :userId and t.completed = false and t.expired = true")
+  List<Long> findOverdueIds(@Param("userId") Long userId);
+
+  // Optional GET /tasks filters shared by the page queries; a null parameter matches
+  // everything (Connector/J inlines it, so MySQL folds the dead branch away)
+  String PAGE_FILTERS = "and (:completed is null or t.completed = :completed) "
+      + "and (:expired is null or t.expired = :expired) "
+      + "and (:priority is null or t.priority = :priority) "
+      + "and (:dueFrom is null or t.dueTime >= :dueFrom) "
+      + "and (:dueTo is null or t.dueTime < :dueTo) ";
+
+  // Keyset page, newest first. Served by idx_tasks_user or, with a completed filter,
+  // idx_tasks_user_completed (InnoDB appends id to both, so no filesort).
+  @Query("select t from Task t where t.userId = :userId and t.id < :beforeId "
+      + PAGE_FILTERS
+      + "order by t.id desc")
+  List<Task> findPageNewest(@Param("userId") Long userId,
+      @Param("beforeId") Long beforeId,
+      @Param("completed") Boolean completed,
+      @Param("expired") Boolean expired,
+      @Param("priority") Priority priority,
+      @Param("dueFrom") LocalDateTime dueFrom,
+      @Param("dueTo") LocalDateTime dueTo,
+      Pageable page);
+
+  // Keyset page, soonest dueTime first, ties by id. The (dueTime, id) > (afterDue, afterId)
+  // test is written as a plain range on dueTime plus a residual, so MySQL range-scans
+  // idx_tasks_user_due or idx_tasks_user_completed_due. Tasks without a dueTime never match.
+  @Query("select t from Task t where t.userId = :userId "
+      + "and t.dueTime >= :afterDue and (t.dueTime > :afterDue or t.id > :afterId) "
+      + PAGE_FILTERS
+      + "order by t.dueTime, t.id")
+  List<Task> findPageByDue(@Param("userId") Long userId,
+      @Param("afterDue") LocalDateTime afterDue,
+      @Param("afterId") Long afterId,
+      @Param("completed") Boolean completed,
+      @Param("expired") Boolean expired,
+      @Param("priority") Priority priority,
+      @Param("dueFrom") LocalDateTime dueFrom,
+      @Param("dueTo") LocalDateTime dueTo,
+      Pageable page);
+
+  // One keyset-ordered chunk of overdue tasks in the given userId-hash partitions
+  // (pass partitions = 1, owned = [0] for all). Read without locking: the owners'
+  // user rows have to be locked before any of these task rows (see lockExpiring).
+  @Query("select new com.lelin.tomato.dto.ExpiryCandidate(t.id, t.userId, t.dueTime) from Task t "
+      + "where t.timeBombEnabled = true and t.completed = false and t.expired = false "
+      + "and t.dueTime <= :now and t.id > :afterId "
+      + "and mod(t.userId, :partitions) in :owned "
+      + "order by t.id")
+  List<ExpiryCandidate> findExpiryChunk(@Param("now") LocalDateTime now,
+      @Param("afterId") Long afterId,
+      @Param("partitions") int partitions,
+      @Param("owned") Collection<Integer> owned,
+      Pageable page);
+
+  // Locks those of ids that are still overdue for the rest of the transaction. Rows
+  // another node already holds are skipped (-2 = SKIP LOCKED), and rows completed,
+  // expired or rescheduled since findExpiryChunk drop out.
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query("select new com.lelin.tomato.dto.ExpiryCandidate(t.id, t.userId, t.dueTime) from Task t "
+      + "where t.id in :ids and t.timeBombEnabled = true and t.completed = false "
+      + "and t.expired = false and t.dueTime <= :now "
+      + "order by t.id")
+  List<ExpiryCandidate> lockExpiring(@Param("ids") Collection<Long> ids,
+      @Param("now") LocalDateTime now);
+
+  // deadlines coming up within the deadline index horizon
+  @Query("select t from Task t where t.timeBombEnabled = true and t.completed = false "
+      + "and t.expired = false and t.dueTime between :from and :to "
+      + "and mod(t.userId, :partitions) in :owned")
+  List<Task> findUpcomingInPartitions(@Param("from") LocalDateTime from,
+      @Param("to") LocalDateTime to,
+      @Param("partitions") int partitions,
+      @Param("owned") Collection<Integer> owned);
+
+  // conditional flip: returns 0 if another node, a completion or a reschedule got there first.
+  // Bumps the optimistic lock too, so a completeTask that read the task before this retries.
+  @Modifying
+  @Query("update Task t set t.expired = true, t.version = t.version + 1, "
+      + "t.changeVersion = :changeVersion "
+      + "where t.id = :id and t.expired = false and t.completed = false "
+      + "and t.timeBombEnabled = true and t.dueTime <= :now")
+  int markExpired(@Param("id") Long id, @Param("now") LocalDateTime now,
+      @Param("changeVersion") long changeVersion);
+
+  // ----- archival (HistoryArchiver) -----
+
+  // completed before the cutoff, range-scanned on idx_tasks_completed_at; no order
+  // needed, since every batch removes what the previous one found
+  @Query("select new com.lelin.tomato.dto.ArchiveCandidate(t.id, t.userId) from Task t "
+      + "where t.completed = true and t.completedAt < :cutoff")
+  List<ArchiveCandidate> findArchivable(@Param("cutoff") LocalDateTime cutoff, Pageable page);
+
+  // the same conditions again: only what ArchivedTaskRepository.copyFromLive copied
+  @Modifying
+  @Query("delete from Task t where t.id in :ids and t.completed = true and t.completedAt < :cutoff")
+  int deleteArchived(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+
+  // GET /sync
+  @Query("select t from Task t where t.userId = :userId and t.changeVersion > :since")
+  List<Task> findChangedSince(@Param("userId") Long userId, @Param("since") long since);
+
+  // batch endpoints: ownership and existence checked in one query
+  @Query("select t from Task t where t.userId = :userId and t.id in :ids")
+  List<Task> findOwned(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+  @Modifying
+  @Query("delete from Task t where t.userId = :userId and t.id in :ids")
+  int deleteOwned(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+  // only for rows already locked by lockExpiring in the same transaction; the change
+  // versions come from the owners' rows, already bumped by SyncService in it too
+  @Modifying
+  @Query("update Task t set t.expired = true, t.version = t.version + 1, "
+      + "t.changeVersion = coalesce((select u.changeVersion from User u where u.id = t.userId), 0) "
+      + "where t.id in :ids")
+  int markExpiredAll(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,51 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.dto.DailyCount;
+import com.lelin.tomato.model.TomatoDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface TomatoDailyRepository extends JpaRepository<TomatoDaily, Long> {
+
+  // one row per (user, day); the unique key turns a repeat into an in-place bump
+  @Modifying
+  @Query(value = "insert into tomato_daily (user_id, bucket_day, tomatoes) values (:userId, :day, :delta) "
+      + "on duplicate key update tomatoes = tomatoes + :delta", nativeQuery = true)
+  int increment(@Param("userId") Long userId, @Param("day") LocalDate day, @Param("delta") long delta);
+
+  @Modifying
+  @Query("update TomatoDaily d set d.tomatoes = greatest(d.tomatoes - :delta, 0) "
+      + "where d.userId = :userId and d.day = :day")
+  int decrement(@Param("userId") Long userId, @Param("day") LocalDate day, @Param("delta") long delta);
+
+  // from inclusive, to exclusive; a range read on uk_tomato_daily_user_day
+  @Query("select new com.lelin.tomato.dto.DailyCount(d.day, d.tomatoes) from TomatoDaily d "
+      + "where d.userId = :userId and d.day >= :from and d.day < :to order by d.day")
+  List<DailyCount> findRange(@Param("userId") Long userId,
+      @Param("from") LocalDate from,
+      @Param("to") LocalDate to);
+
+  // ----- drift repair, one user id range at a time -----
+
+  // raw tomatoes minus rolled-up tomatoes for the range; non-zero means rebuild it
+  @Query(value = "select (select count(*) from tomatoes where user_id > :afterId and user_id <= :toId) "
+      + "- (select coalesce(sum(tomatoes), 0) from tomato_daily where user_id > :afterId and user_id <= :toId)",
+      nativeQuery = true)
+  long drift(@Param("afterId") long afterId, @Param("toId") long toId);
+
+  @Modifying
+  @Query("delete from TomatoDaily d where d.userId > :afterId and d.userId <= :toId")
+  int deleteRange(@Param("afterId") long afterId, @Param("toId") long toId);
+
+  @Modifying
+  @Query(value = "insert into tomato_daily (user_id, bucket_day, tomatoes) "
+      + "select user_id, cast(timestamp as date), count(*) from tomatoes "
+      + "where user_id > :afterId and user_id <= :toId "
+      + "group by user_id, cast(timestamp as date)", nativeQuery = true)
+  int rebuildRange(@Param("afterId") long afterId, @Param("toId") long toId);
+}
@@ -0,0 +1,15 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.Tomato;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+// Fragment of TomatoRepository for the history export, whose fetch size depends on the database
+public interface TomatoHistoryRepository {
+
+  // Newest first, from inclusive / to exclusive (null = open-ended), at most limit rows
+  // (null = all). Rows are streamed off the cursor; the caller must consume the stream
+  // inside a transaction and close it.
+  Stream<Tomato> streamHistory(Long userId, LocalDateTime from, LocalDateTime to, Integer limit);
+}
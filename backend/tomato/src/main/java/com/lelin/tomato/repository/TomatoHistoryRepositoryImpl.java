@@ -0,0 +1,53 @@
+package com.lelin.tomato.repository;
+
+import com.lelin.tomato.model.Tomato;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+class TomatoHistoryRepositoryImpl implements TomatoHistoryRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  // 0 = pick for the database (see streamingFetchSize)
+  @Value("${app.tomatoes.export-fetch-size:0}")
+  private int configuredFetchSize;
+
+  private volatile Integer fetchSize;
+
+  @Override
+  public Stream<Tomato> streamHistory(Long userId, LocalDateTime from, LocalDateTime to, Integer limit) {
+    TypedQuery<Tomato> query = entityManager.createQuery("select t from Tomato t where t.userId = :userId "
+            + "and (:from is null or t.timestamp >= :from) "
+            + "and (:to is null or t.timestamp < :to) "
+            + "order by t.timestamp desc", Tomato.class)
+        .setParameter("userId", userId)
+        .setParameter("from", from)
+        .setParameter("to", to)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, streamingFetchSize());
+    if (limit != null) {
+      query.setMaxResults(limit);
+    }
+    return query.getResultStream();
+  }
+
+  // Integer.MIN_VALUE makes Connector/J stream rows one at a time instead of buffering
+  // the whole result. Other drivers (H2 in the load-test profile) reject a negative
+  // fetch size but stream with an ordinary one.
+  private int streamingFetchSize() {
+    if (fetchSize == null) {
+      boolean mysql = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+          .getJdbcServices().getDialect() instanceof MySQLDialect;
+      fetchSize = configuredFetchSize != 0 ? configuredFetchSize : mysql ? Integer.MIN_VALUE : 500;
+    }
+    return fetchSize;
+  }
+}
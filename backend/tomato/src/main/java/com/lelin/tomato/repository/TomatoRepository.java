@@ -1,15 +1,45 @@
 package com.lelin.tomato.repository;
 
+import com.lelin.tomato.dto.DailyCount;
 import com.lelin.tomato.model.Tomato;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
-public interface TomatoRepository extends JpaRepository<Tomato, Long> {
+// streamHistory (the history export) lives in TomatoHistoryRepository
+public interface TomatoRepository extends JpaRepository<Tomato, Long>, TomatoHistoryRepository {
 
   long countByUserId(Long userId);
   List<Tomato> findByUserIdOrderByTimestampDesc(Long userId);
-  void deleteByUserIdAndTaskId(Long userId, Long taskId);
+  long deleteByUserIdAndTaskId(Long userId, Long taskId);
   long countByUserIdAndTaskId(Long userId, Long taskId);
+
+  // which days a task's tomatoes landed on, so removing them can adjust the daily rollup
+  @Query("select new com.lelin.tomato.dto.DailyCount(cast(t.timestamp as LocalDate), count(t)) "
+      + "from Tomato t where t.userId = :userId and t.taskId = :taskId "
+      + "group by cast(t.timestamp as LocalDate)")
+  List<DailyCount> countPerDayForTask(@Param("userId") Long userId, @Param("taskId") Long taskId);
+
+  // the same for a batch of deleted tasks
+  @Query("select new com.lelin.tomato.dto.DailyCount(cast(t.timestamp as LocalDate), count(t)) "
+      + "from Tomato t where t.userId = :userId and t.taskId in :taskIds "
+      + "group by cast(t.timestamp as LocalDate)")
+  List<DailyCount> countPerDayForTasks(@Param("userId") Long userId,
+      @Param("taskIds") Collection<Long> taskIds);
+
+  @Modifying
+  @Query("delete from Tomato t where t.userId = :userId and t.taskId in :taskIds")
+  int deleteForTasks(@Param("userId") Long userId, @Param("taskIds") Collection<Long> taskIds);
+
+  // tombstones for tomatoes about to be removed with their tasks
+  @Query("select t.id from Tomato t where t.userId = :userId and t.taskId in :taskIds")
+  List<Long> findIdsForTasks(@Param("userId") Long userId, @Param("taskIds") Collection<Long> taskIds);
+
+  // GET /sync
+  @Query("select t from Tomato t where t.userId = :userId and t.changeVersion > :since")
+  List<Tomato> findChangedSince(@Param("userId") Long userId, @Param("since") long since);
 }
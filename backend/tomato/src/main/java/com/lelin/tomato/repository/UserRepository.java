@@ -1,8 +1,16 @@
 package com.lelin.tomato.repository;
 
+import com.lelin.tomato.dto.UserVersion;
 import com.lelin.tomato.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -11,5 +19,91 @@ public interface UserRepository extends JpaRepository<User, Long> {
   boolean existsByEmail(String email);
 
   boolean existsByUsernameIgnoreCase(String username);
-}
 
+  // ----- garden counters -----
+
+  @Query("select u.tomatoCount from User u where u.id = :userId")
+  Optional<Long> findTomatoCount(@Param("userId") Long userId);
+
+  @Query("select u.activePunishmentCount from User u where u.id = :userId")
+  Optional<Integer> findActivePunishmentCount(@Param("userId") Long userId);
+
+  @Modifying
+  @Query("update User u set u.tomatoCount = greatest(u.tomatoCount + :delta, 0) where u.id = :userId")
+  int addTomatoes(@Param("userId") Long userId, @Param("delta") long delta);
+
+  // infestationLevel is assigned first so it sees the pre-update count on every database
+  @Modifying
+  @Query("update User u set "
+      + "u.infestationLevel = least(greatest(u.activePunishmentCount + :delta, 0), :max), "
+      + "u.activePunishmentCount = greatest(u.activePunishmentCount + :delta, 0) "
+      + "where u.id = :userId")
+  int addActivePunishments(@Param("userId") Long userId, @Param("delta") int delta,
+      @Param("max") int maxInfestation);
+
+  // GardenLedgerReplay: counters as folded from the ledger
+  @Modifying
+  @Query("update User u set u.tomatoCount = :tomatoCount, "
+      + "u.activePunishmentCount = :activePunishments, "
+      + "u.infestationLevel = :infestationLevel "
+      + "where u.id = :userId")
+  int setGardenCounters(@Param("userId") Long userId, @Param("tomatoCount") long tomatoCount,
+      @Param("activePunishments") int activePunishments, @Param("infestationLevel") int infestationLevel);
+
+  // ----- delta sync (SyncService) -----
+
+  // also takes the row lock that orders concurrent writers of the same user until commit
+  @Modifying
+  @Query("update User u set u.changeVersion = u.changeVersion + 1 where u.id in :userIds")
+  int bumpChangeVersions(@Param("userIds") Collection<Long> userIds);
+
+  @Query("select new com.lelin.tomato.dto.UserVersion(u.id, u.changeVersion) "
+      + "from User u where u.id in :userIds")
+  List<UserVersion> findChangeVersions(@Param("userIds") Collection<Long> userIds);
+
+  // GardenStateCache validity check
+  @Query("select u.changeVersion from User u where u.id = :userId")
+  Optional<Long> findChangeVersion(@Param("userId") Long userId);
+
+  @Query("select new com.lelin.tomato.dto.UserVersion(u.id, u.changeVersion, u.syncFloor) "
+      + "from User u where u.id = :userId")
+  Optional<UserVersion> findSyncState(@Param("userId") Long userId);
+
+  // clients behind the newest pruned tombstone can no longer catch up by delta
+  @Modifying
+  @Query("update User u set u.syncFloor = (select max(s.changeVersion) from SyncTombstone s "
+      + "    where s.userId = u.id and s.deletedAt < :cutoff) "
+      + "where u.syncFloor < (select coalesce(max(s.changeVersion), 0) from SyncTombstone s "
+      + "    where s.userId = u.id and s.deletedAt < :cutoff)")
+  int raiseSyncFloors(@Param("cutoff") LocalDateTime cutoff);
+
+  @Query("select coalesce(max(u.id), 0) from User u")
+  long findMaxId();
+
+  // ----- drift repair, one id range at a time -----
+  // a repaired row takes a new change version, so cached gardens of it are reloaded
+
+  @Modifying
+  @Transactional
+  @Query("update User u set u.tomatoCount = (select count(t) from Tomato t where t.userId = u.id), "
+      + "u.changeVersion = u.changeVersion + 1 "
+      + "where u.id > :afterId and u.id <= :toId "
+      + "and u.tomatoCount <> (select count(t) from Tomato t where t.userId = u.id)")
+  int repairTomatoCounts(@Param("afterId") long afterId, @Param("toId") long toId);
+
+  @Modifying
+  @Transactional
+  @Query("update User u set "
+      + "u.infestationLevel = least((select count(p) from Punishment p "
+      + "    where p.userId = u.id and p.resolved = false), :max), "
+      + "u.activePunishmentCount = (select count(p) from Punishment p "
+      + "    where p.userId = u.id and p.resolved = false), "
+      + "u.changeVersion = u.changeVersion + 1 "
+      + "where u.id > :afterId and u.id <= :toId "
+      + "and (u.activePunishmentCount <> (select count(p) from Punishment p "
+      + "        where p.userId = u.id and p.resolved = false) "
+      + "  or u.infestationLevel <> least((select count(p) from Punishment p "
+      + "        where p.userId = u.id and p.resolved = false), :max))")
+  int repairPunishmentCounts(@Param("afterId") long afterId, @Param("toId") long toId,
+      @Param("max") int maxInfestation);
+}
@@ -0,0 +1,32 @@
+package com.lelin.tomato.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+/**
+ * The principal JWTAuthenticationFilter puts in the SecurityContext.
+ * Controllers take it as a method parameter (see CurrentUserArgumentResolver)
+ * instead of parsing the userId back out of Authentication.getName().
+ */
+@Getter
+@AllArgsConstructor
+public class AuthenticatedUser implements AuthenticatedPrincipal {
+
+  public static final List<GrantedAuthority> AUTHORITIES =
+      List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+  private final Long userId;
+
+  private final String username;
+
+  // keeps Authentication.getName() returning the userId string, as before
+  @Override
+  public String getName() {
+    return String.valueOf(userId);
+  }
+}
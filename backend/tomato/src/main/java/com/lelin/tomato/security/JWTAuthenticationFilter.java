@@ -1,25 +1,45 @@
 package com.lelin.tomato.security;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Component
-@RequiredArgsConstructor
 public class JWTAuthenticationFilter extends OncePerRequestFilter {
 
   private final JWTUtil jwtUtil;
-  private final UserDetailsServiceImpl userDetailsService;
+  private final PrincipalCache principalCache;
+  private final Timer authenticatedTimer;
+  private final Timer rejectedTimer;
+
+  public JWTAuthenticationFilter(JWTUtil jwtUtil, PrincipalCache principalCache,
+      MeterRegistry registry) {
+    this.jwtUtil = jwtUtil;
+    this.principalCache = principalCache;
+    this.authenticatedTimer = filterTimer(registry, "authenticated");
+    this.rejectedTimer = filterTimer(registry, "rejected");
+  }
+
+  private static Timer filterTimer(MeterRegistry registry, String result) {
+    return Timer.builder("auth.jwt.filter")
+        .description("Token verification and principal lookup")
+        .tag("result", result)
+        .register(registry);
+  }
 
   @Override
   protected void doFilterInternal(HttpServletRequest request,
@@ -28,49 +48,47 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
       throws ServletException, IOException {
 
     String path = request.getServletPath();
-    if (path.startsWith("/auth/") || path.equals("/deep_ping")) {
+    // /auth/me is authenticated like any other user read, so RateLimitFilter can meter it
+    if (path.equals("/auth/login") || path.equals("/auth/register") || path.equals("/deep_ping")) {
       filterChain.doFilter(request, response);
       return;
     }
 
     String authHeader = request.getHeader("Authorization");
 
-    String jwt = null;
-    Long userId = null;
-
-    if (authHeader != null && authHeader.startsWith("Bearer ")) {
-      jwt = authHeader.substring(7);
-      userId = jwtUtil.extractUserId(jwt);
-    }
-
-    if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-      UserDetails userDetails = userDetailsService.loadUserByUsername(String.valueOf(userId));
-
-      if (jwtUtil.validateToken(jwt) && userDetails.getUsername().equals(userId.toString())) {
-        UsernamePasswordAuthenticationToken authToken =
-            new UsernamePasswordAuthenticationToken(
-              userId.toString(),
-              null,
-              userDetails.getAuthorities()
-            );
-
-        authToken.setDetails(
-            new WebAuthenticationDetailsSource().buildDetails(request)
-        );
-
-        SecurityContextHolder.getContext().setAuthentication(authToken);
+    if (authHeader != null && authHeader.startsWith("Bearer ")
+        && SecurityContextHolder.getContext().getAuthentication() == null) {
+      long start = System.nanoTime();
+      // the one and only parse + signature check for this request
+      Claims claims = jwtUtil.verify(authHeader.substring(7));
+
+      if (claims != null) {
+        Long userId = Long.parseLong(claims.getSubject());
+        // cached, so usually no users-table query here
+        AuthenticatedUser principal = principalCache.get(userId);
+
+        if (principal != null) {
+          UsernamePasswordAuthenticationToken authToken =
+              new UsernamePasswordAuthenticationToken(
+                principal,
+                null,
+                AuthenticatedUser.AUTHORITIES
+              );
+
+          authToken.setDetails(
+              new WebAuthenticationDetailsSource().buildDetails(request)
+          );
+
+          SecurityContextHolder.getContext().setAuthentication(authToken);
+        }
       }
-    }
-    System.out.println("===> JWT FILTER RUNNING");
-
-    System.out.println("Header = " + authHeader);
 
-    System.out.println("Extracted userId = " + userId);
-
-    System.out.println("SecurityContext before = " + SecurityContextHolder.getContext().getAuthentication());
-
-    System.out.println("Token valid? " + jwtUtil.validateToken(jwt));
+      boolean authenticated = SecurityContextHolder.getContext().getAuthentication() != null;
+      (authenticated ? authenticatedTimer : rejectedTimer)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      log.debug("JWT filter: {} authenticated={}", path, authenticated);
+    }
 
     filterChain.doFilter(request, response);
   }
-}
\ No newline at end of file
+}
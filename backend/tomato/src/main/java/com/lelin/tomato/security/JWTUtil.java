@@ -1,11 +1,18 @@
 package com.lelin.tomato.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.SecretKey;
+import java.time.Duration;
 import java.util.Date;
 
 @Component
@@ -17,34 +24,77 @@ public class JWTUtil {
   @Value("${jwt.expiration}")
   private long EXPIRATION;
 
+  @Value("${app.auth.token-cache.max-size:10000}")
+  private long tokenCacheSize;
+
+  @Value("${app.auth.token-cache.ttl-seconds:60}")
+  private long tokenCacheTtlSeconds;
+
+  // built once; both are immutable and thread-safe
+  private SecretKey key;
+  private JwtParser parser;
+
+  // tokens whose signature already checked out, so repeat calls skip the HMAC
+  private Cache<String, Claims> verified;
+
+  @PostConstruct
+  void init() {
+    key = Keys.hmacShaKeyFor(SECRET.getBytes());
+    parser = Jwts.parserBuilder()
+        .setSigningKey(key)
+        .build();
+    verified = Caffeine.newBuilder()
+        .maximumSize(tokenCacheSize)
+        .expireAfterWrite(Duration.ofSeconds(tokenCacheTtlSeconds))
+        .build();
+  }
+
   public String generateToken(Long userId) {
     return Jwts.builder()
         .setSubject(String.valueOf(userId))  // store ID as string
         .setIssuedAt(new Date())
         .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION))
-        .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()))
+        .signWith(key)
         .compact();
   }
 
-  public Long extractUserId(String token) {
-    Claims claims = Jwts.parserBuilder()
-        .setSigningKey(SECRET.getBytes())
-        .build()
-        .parseClaimsJws(token)
-        .getBody();
+  /**
+   * Parses and validates the token in one pass and returns its claims,
+   * or null if it is malformed, badly signed or expired.
+   */
+  public Claims verify(String token) {
+    if (token == null || token.isBlank()) {
+      return null;
+    }
+
+    Claims cached = verified.getIfPresent(token);
+    if (cached != null) {
+      // a cached token can still run past its exp while in the cache
+      if (cached.getExpiration() != null && cached.getExpiration().before(new Date())) {
+        verified.invalidate(token);
+        return null;
+      }
+      return cached;
+    }
+
+    try {
+      Claims claims = parser.parseClaimsJws(token).getBody();
+      verified.put(token, claims);
+      return claims;
+    } catch (JwtException | IllegalArgumentException e) {
+      return null;
+    }
+  }
 
+  public Long extractUserId(String token) {
+    Claims claims = verify(token);
+    if (claims == null) {
+      throw new RuntimeException("Invalid token");
+    }
     return Long.parseLong(claims.getSubject());
   }
 
   public boolean validateToken(String token) {
-    try {
-      Jwts.parserBuilder()
-          .setSigningKey(SECRET.getBytes())
-          .build()
-          .parseClaimsJws(token);
-      return true;
-    } catch (Exception e) {
-      return false;
-    }
+    return verify(token) != null;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package com.lelin.tomato.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt on its own small, bounded pool so a burst of logins can only ever
+ * take that many cores, never the request threads (or the carriers under virtual
+ * threads) the rest of the API needs. When the queue is full, or a caller has
+ * waited longer than the timeout, the call fails fast with
+ * {@link RejectedExecutionException}, which the API answers with 503 + Retry-After.
+ */
+@Component
+public class PasswordHasher {
+
+  private final BCryptPasswordEncoder encoder;
+  private final ThreadPoolExecutor executor;
+  private final long timeoutMs;
+
+  private final Op encodeOp;
+  private final Op matchesOp;
+  private final Counter queueFull;
+  private final Counter timedOut;
+
+  // queue wait and BCrypt time, per operation
+  private record Op(Timer queued, Timer hashing) {
+
+    static Op register(MeterRegistry registry, String name) {
+      return new Op(
+          Timer.builder("auth.hashing.wait").tag("op", name)
+              .description("Time a password hashing job spent queued")
+              .publishPercentiles(0.5, 0.99)
+              .register(registry),
+          Timer.builder("auth.hashing.duration").tag("op", name)
+              .description("Time spent in BCrypt")
+              .publishPercentiles(0.5, 0.99)
+              .register(registry));
+    }
+  }
+
+  public PasswordHasher(BCryptPasswordEncoder encoder, MeterRegistry registry,
+      // 0 = half the cores: hashing keeps its share, the API keeps the rest
+      @Value("${app.auth.hashing.threads:0}") int threads,
+      @Value("${app.auth.hashing.queue-size:32}") int queueSize,
+      @Value("${app.auth.hashing.timeout-ms:3000}") long timeoutMs) {
+    this.encoder = encoder;
+    this.timeoutMs = timeoutMs;
+
+    int poolSize = threads > 0 ? threads
+        : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    AtomicInteger seq = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        r -> {
+          Thread t = new Thread(r, "password-hasher-" + seq.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+
+    Gauge.builder("auth.hashing.queue.depth", executor, e -> e.getQueue().size())
+        .description("Password hashing jobs waiting for a thread")
+        .register(registry);
+    Gauge.builder("auth.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Password hashing jobs running")
+        .register(registry);
+    this.encodeOp = Op.register(registry, "encode");
+    this.matchesOp = Op.register(registry, "matches");
+    this.queueFull = Counter.builder("auth.hashing.rejected").tag("reason", "queue_full")
+        .register(registry);
+    this.timedOut = Counter.builder("auth.hashing.rejected").tag("reason", "timeout")
+        .register(registry);
+  }
+
+  public String encode(String rawPassword) {
+    return run(encodeOp, () -> encoder.encode(rawPassword));
+  }
+
+  public boolean matches(String rawPassword, String encodedPassword) {
+    return run(matchesOp, () -> encoder.matches(rawPassword, encodedPassword));
+  }
+
+  private <T> T run(Op op, Supplier<T> work) {
+    long queuedAt = System.nanoTime();
+    Future<T> future;
+    try {
+      future = executor.submit(() -> {
+        long startedAt = System.nanoTime();
+        op.queued().record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+        try {
+          return work.get();
+        } finally {
+          op.hashing().record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      queueFull.increment();
+      throw new RejectedExecutionException("Too many logins right now, please retry");
+    }
+
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // drop it if it hasn't started, so it stops holding a queue slot
+      future.cancel(false);
+      executor.remove((Runnable) future);
+      timedOut.increment();
+      throw new RejectedExecutionException("Too many logins right now, please retry");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      throw new RejectedExecutionException("Interrupted while waiting for password hashing");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,42 @@
+package com.lelin.tomato.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lelin.tomato.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, TTL-evicting cache of authenticated principals by userId, so most
+ * requests authenticate without touching the users table. Anything that changes
+ * what the principal carries (username, account removal) must invalidate it.
+ */
+@Component
+public class PrincipalCache {
+
+  private final UserRepository userRepository;
+  private final Cache<Long, AuthenticatedUser> cache;
+
+  public PrincipalCache(UserRepository userRepository,
+      @Value("${app.auth.principal-cache.max-size:10000}") long maxSize,
+      @Value("${app.auth.principal-cache.ttl-seconds:300}") long ttlSeconds) {
+    this.userRepository = userRepository;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .build();
+  }
+
+  // null if the user no longer exists (not cached, so a re-created id is picked up)
+  public AuthenticatedUser get(Long userId) {
+    return cache.get(userId, id -> userRepository.findById(id)
+        .map(user -> new AuthenticatedUser(user.getId(), user.getUsername()))
+        .orElse(null));
+  }
+
+  public void invalidate(Long userId) {
+    cache.invalidate(userId);
+  }
+}
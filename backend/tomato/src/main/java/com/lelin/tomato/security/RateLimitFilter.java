@@ -0,0 +1,233 @@
+package com.lelin.tomato.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Admission control, right after JWTAuthenticationFilter so the userId is known.
+ * Per user there is one token bucket for reads (GET/HEAD) and one for writes; login and
+ * register, which have no user yet, and /auth/me without a valid token are limited per
+ * client IP instead. Behind a trusted proxy (app.ratelimit.trusted-proxies, loopback by
+ * default for nginx on the same box) the client IP is taken from X-Forwarded-For. On top of that a global cap on in-flight requests
+ * sheds load before requests start queueing on the connection pool. Everything
+ * rejected gets 429 with Retry-After.
+ *
+ * Buckets live in a bounded Caffeine cache and are dropped after idle-seconds without
+ * traffic; by then they have refilled anyway, so eviction never forgives a debt.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+  private record UserBuckets(TokenBucket read, TokenBucket write) {
+  }
+
+  private final boolean enabled;
+  private final double readPerSecond;
+  private final int readBurst;
+  private final double writePerSecond;
+  private final int writeBurst;
+  private final double authPerSecond;
+  private final int authBurst;
+  private final Set<String> trustedProxies;
+
+  private final Cache<Long, UserBuckets> userBuckets;
+  private final Cache<String, TokenBucket> ipBuckets;
+  private final Semaphore inFlight;
+  private final int maxConcurrent;
+
+  private final Counter rejectedRead;
+  private final Counter rejectedWrite;
+  private final Counter rejectedAuth;
+  private final Counter rejectedConcurrency;
+
+  public RateLimitFilter(MeterRegistry registry,
+      @Value("${app.ratelimit.enabled:true}") boolean enabled,
+      @Value("${app.ratelimit.read.per-second:20}") double readPerSecond,
+      @Value("${app.ratelimit.read.burst:60}") int readBurst,
+      @Value("${app.ratelimit.write.per-second:5}") double writePerSecond,
+      @Value("${app.ratelimit.write.burst:30}") int writeBurst,
+      @Value("${app.ratelimit.auth.per-second:1}") double authPerSecond,
+      @Value("${app.ratelimit.auth.burst:30}") int authBurst,
+      @Value("${app.ratelimit.idle-seconds:600}") long idleSeconds,
+      @Value("${app.ratelimit.max-keys:100000}") long maxKeys,
+      // 0 = 4x the Hikari pool: enough to keep every connection busy, not enough to pile up behind them
+      @Value("${app.ratelimit.max-concurrent:0}") int maxConcurrent,
+      @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+      // proxies that append the client address (nginx's $proxy_add_x_forwarded_for); empty = none
+      @Value("${app.ratelimit.trusted-proxies:127.0.0.1,::1,0:0:0:0:0:0:0:1}") String trustedProxies) {
+    this.enabled = enabled;
+    this.readPerSecond = readPerSecond;
+    this.readBurst = readBurst;
+    this.writePerSecond = writePerSecond;
+    this.writeBurst = writeBurst;
+    this.authPerSecond = authPerSecond;
+    this.authBurst = authBurst;
+    this.trustedProxies = Arrays.stream(trustedProxies.split(","))
+        .map(String::trim)
+        .filter(ip -> !ip.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+
+    this.userBuckets = Caffeine.newBuilder()
+        .maximumSize(maxKeys)
+        .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+        .build();
+    this.ipBuckets = Caffeine.newBuilder()
+        .maximumSize(maxKeys)
+        .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+        .build();
+
+    this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : 4 * poolSize;
+    this.inFlight = new Semaphore(this.maxConcurrent);
+
+    Gauge.builder("http.server.requests.inflight", inFlight,
+            s -> this.maxConcurrent - s.availablePermits())
+        .description("Requests currently admitted")
+        .register(registry);
+    this.rejectedRead = rejected(registry, "user_read");
+    this.rejectedWrite = rejected(registry, "user_write");
+    this.rejectedAuth = rejected(registry, "auth_ip");
+    this.rejectedConcurrency = rejected(registry, "concurrency");
+  }
+
+  private static Counter rejected(MeterRegistry registry, String reason) {
+    return Counter.builder("http.ratelimit.rejected")
+        .description("Requests answered with 429")
+        .tag("reason", reason)
+        .register(registry);
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    String path = request.getServletPath();
+    return !enabled
+        || "OPTIONS".equals(request.getMethod())
+        || path.equals("/deep_ping")
+        || path.startsWith("/actuator/");
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request,
+      HttpServletResponse response,
+      FilterChain filterChain)
+      throws ServletException, IOException {
+
+    long now = System.nanoTime();
+    long waitNanos;
+    Counter rejected;
+
+    Long userId = isCredentialEndpoint(request) ? null : currentUserId();
+    if (userId == null && request.getServletPath().startsWith("/auth/")) {
+      // login, register, and /auth/me without a valid token: those controllers run
+      // (and can reach the database) with no user to charge, so the client IP pays
+      waitNanos = ipBuckets.get(clientIp(request), ip -> new TokenBucket(authPerSecond, authBurst, now))
+          .tryAcquire(now);
+      rejected = rejectedAuth;
+    } else {
+      if (userId == null) {
+        // unauthenticated elsewhere: security answers 401 before any controller runs
+        waitNanos = 0;
+        rejected = null;
+      } else {
+        UserBuckets buckets = userBuckets.get(userId, id -> new UserBuckets(
+            new TokenBucket(readPerSecond, readBurst, now),
+            new TokenBucket(writePerSecond, writeBurst, now)));
+        if (isRead(request)) {
+          waitNanos = buckets.read().tryAcquire(now);
+          rejected = rejectedRead;
+        } else {
+          waitNanos = buckets.write().tryAcquire(now);
+          rejected = rejectedWrite;
+        }
+      }
+    }
+
+    if (waitNanos > 0) {
+      rejected.increment();
+      reject(response, waitNanos, "Too many requests, slow down");
+      return;
+    }
+
+    if (!inFlight.tryAcquire()) {
+      rejectedConcurrency.increment();
+      reject(response, TimeUnit.SECONDS.toNanos(1), "Server busy, please retry");
+      return;
+    }
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      // for streaming/SSE responses this is when the request goes async, not when it ends
+      inFlight.release();
+    }
+  }
+
+  // the /auth endpoints that never have a user; /auth/me with a token counts as a user read
+  private static boolean isCredentialEndpoint(HttpServletRequest request) {
+    String path = request.getServletPath();
+    return path.equals("/auth/login") || path.equals("/auth/register");
+  }
+
+  private static boolean isRead(HttpServletRequest request) {
+    String method = request.getMethod();
+    return "GET".equals(method) || "HEAD".equals(method);
+  }
+
+  private static Long currentUserId() {
+    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+    if (auth != null && auth.getPrincipal() instanceof AuthenticatedUser user) {
+      return user.getUserId();
+    }
+    return null;
+  }
+
+  // Walks X-Forwarded-For from the right while the hop we got it from is a trusted
+  // proxy; the first untrusted address is the client. Hops further left are whatever the
+  // client chose to send.
+  String clientIp(HttpServletRequest request) {
+    String ip = request.getRemoteAddr();
+    String forwarded = request.getHeader("X-Forwarded-For");
+    if (forwarded == null || forwarded.isBlank()) {
+      return ip;
+    }
+    String[] hops = forwarded.split(",");
+    for (int i = hops.length - 1; i >= 0 && trustedProxies.contains(ip); i--) {
+      String hop = hops[i].trim();
+      if (hop.isEmpty()) {
+        break;
+      }
+      ip = hop;
+    }
+    return ip;
+  }
+
+  private static void reject(HttpServletResponse response, long waitNanos, String message)
+      throws IOException {
+    long seconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.getWriter().write("{\"error\":\"" + message + "\"}");
+  }
+}
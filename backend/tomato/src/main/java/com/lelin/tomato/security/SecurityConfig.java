@@ -2,23 +2,38 @@ package com.lelin.tomato.security;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+import java.util.Arrays;
+import java.util.List;
 
 @Configuration
 @RequiredArgsConstructor
 public class SecurityConfig {
 
   private final JWTAuthenticationFilter jwtAuthenticationFilter;
+  private final RateLimitFilter rateLimitFilter;
+
+  // addresses or CIDR ranges allowed to scrape /actuator/prometheus outside the local profile
+  @Value("${app.metrics.allowed-ips:127.0.0.1,::1}")
+  private String metricsAllowedIps;
 
   // ---------- LOCAL: Spring handles CORS ----------
   @Bean
@@ -29,10 +44,16 @@ public class SecurityConfig {
         .cors(withDefaults()) // <-- enable CORS only in local
         .authorizeHttpRequests(auth -> auth
             .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+            // the request was authorized before it went async (streaming responses);
+            // the JWT filter doesn't run again on the async dispatch that finishes it
+            .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
             .requestMatchers("/auth/**", "/deep_ping","/error").permitAll()
+            // scraped without a user token; keep it off the public port in production (application.yml)
+            .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
             .anyRequest().authenticated()
         )
-        .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+        .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+        .addFilterAfter(rateLimitFilter, JWTAuthenticationFilter.class);
 
     return http.build();
   }
@@ -46,14 +67,37 @@ public class SecurityConfig {
         // NO .cors() here (nginx handles it)
         .authorizeHttpRequests(auth -> auth
             .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+            // the request was authorized before it went async (streaming responses);
+            // the JWT filter doesn't run again on the async dispatch that finishes it
+            .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
             .requestMatchers("/auth/**", "/deep_ping").permitAll()
+            .requestMatchers("/actuator/health").permitAll()
+            // scraped without a user token, so only by the scraper itself (see metricsScrapers)
+            .requestMatchers("/actuator/prometheus").access(metricsScrapers())
             .anyRequest().authenticated()
         )
-        .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+        .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+        .addFilterAfter(rateLimitFilter, JWTAuthenticationFilter.class);
 
     return http.build();
   }
 
+  // Direct requests from app.metrics.allowed-ips (the box itself by default). Through
+  // nginx every caller looks like loopback, so anything carrying X-Forwarded-For is
+  // refused; the scrape also works on MANAGEMENT_SERVER_PORT, where nginx never sends.
+  private AuthorizationManager<RequestAuthorizationContext> metricsScrapers() {
+    List<IpAddressMatcher> allowed = Arrays.stream(metricsAllowedIps.split(","))
+        .map(String::trim)
+        .filter(ip -> !ip.isEmpty())
+        .map(IpAddressMatcher::new)
+        .toList();
+    return (authentication, context) -> {
+      HttpServletRequest request = context.getRequest();
+      boolean direct = request.getHeader("X-Forwarded-For") == null;
+      return new AuthorizationDecision(direct && allowed.stream().anyMatch(m -> m.matches(request)));
+    };
+  }
+
   // ---------- shared beans ----------
   @Bean
   public BCryptPasswordEncoder passwordEncoder() {
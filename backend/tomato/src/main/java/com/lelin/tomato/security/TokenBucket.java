@@ -0,0 +1,37 @@
+package com.lelin.tomato.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as a single "theoretical arrival time" (GCRA):
+ * each request pushes it one interval into the future, and the request is let
+ * through as long as it stays within burst intervals of now. One CAS per request,
+ * no timer thread, and a bucket whose tat is in the past is simply full.
+ */
+final class TokenBucket {
+
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final AtomicLong tat;
+
+  TokenBucket(double perSecond, int burst, long nowNanos) {
+    this.intervalNanos = Math.max(1, (long) (1_000_000_000L / perSecond));
+    this.toleranceNanos = intervalNanos * Math.max(1, burst);
+    this.tat = new AtomicLong(nowNanos);
+  }
+
+  // 0 if a token was taken, otherwise how long until the next one frees up
+  long tryAcquire(long nowNanos) {
+    while (true) {
+      long current = tat.get();
+      long next = Math.max(current, nowNanos) + intervalNanos;
+      long over = next - nowNanos - toleranceNanos;
+      if (over > 0) {
+        return over;
+      }
+      if (tat.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+}
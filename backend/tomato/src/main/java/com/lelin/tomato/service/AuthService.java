@@ -1,13 +1,14 @@
 package com.lelin.tomato.service;
 
 import com.lelin.tomato.dto.LoginRequest;
+import com.lelin.tomato.dto.LoginResult;
 import com.lelin.tomato.dto.RegisterRequest;
 import com.lelin.tomato.model.User;
 import com.lelin.tomato.repository.UserRepository;
 
 import com.lelin.tomato.security.JWTUtil;
+import com.lelin.tomato.security.PasswordHasher;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -17,10 +18,8 @@ import java.time.LocalDateTime;
 public class AuthService {
 
   private final UserRepository userRepository;
-  private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
-
-//  private final UserRepository userRepository;
-//  private final BCryptPasswordEncoder passwordEncoder;
+  // BCrypt runs on the hasher's own bounded pool, never on the request thread
+  private final PasswordHasher passwordHasher;
   private final JWTUtil jwtUtil;
 
   public User register(RegisterRequest request) {
@@ -32,7 +31,7 @@ public class AuthService {
     User user = User.builder()
         .username(request.getUsername())
         .email(request.getEmail())
-        .password(passwordEncoder.encode(request.getPassword()))
+        .password(passwordHasher.encode(request.getPassword()))
         .createdAt(LocalDateTime.now())
         .infestationLevel(0)
         .build();
@@ -40,15 +39,14 @@ public class AuthService {
     return userRepository.save(user);
   }
 
-  public String login(LoginRequest request) {
+  public LoginResult login(LoginRequest request) {
     User user = userRepository.findByEmail(request.getEmail())
         .orElseThrow(() -> new RuntimeException("User not found"));
 
-    if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
+    if (!passwordHasher.matches(request.getPassword(), user.getPassword())) {
       throw new RuntimeException("Invalid password");
     }
 
-    return jwtUtil.generateToken(user.getId());
+    return new LoginResult(jwtUtil.generateToken(user.getId()), user);
   }
 }
-
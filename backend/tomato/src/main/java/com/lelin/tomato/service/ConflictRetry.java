@@ -0,0 +1,87 @@
+package com.lelin.tomato.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a read-check-write in its own transaction and re-runs it from scratch when it
+ * loses a race: an optimistic lock failure (@Version on Task and Punishment) or a
+ * deadlock victim. Each attempt re-reads, so the winner's change is seen and the rules
+ * are applied to it (a task completed twice is ALREADY completed the second time).
+ * Bounded by max-attempts with a short jittered pause; after that the conflict goes to
+ * the client as 409.
+ */
+@Slf4j
+@Component
+public class ConflictRetry {
+
+  private final TransactionTemplate tx;
+  private final int maxAttempts;
+  private final long backoffMs;
+  private final Counter retried;
+  private final Counter exhausted;
+
+  public ConflictRetry(PlatformTransactionManager transactionManager, MeterRegistry registry,
+      @Value("${app.tasks.conflict-retry.max-attempts:4}") int maxAttempts,
+      @Value("${app.tasks.conflict-retry.backoff-ms:20}") long backoffMs) {
+    this.tx = new TransactionTemplate(transactionManager);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.backoffMs = backoffMs;
+    this.retried = Counter.builder("tasks.conflict.retries")
+        .description("Task writes re-run after losing a race")
+        .register(registry);
+    this.exhausted = Counter.builder("tasks.conflict.exhausted")
+        .description("Task writes that kept losing races and were answered with 409")
+        .register(registry);
+  }
+
+  public <T> T inTransaction(Supplier<T> work) {
+    // joining someone else's transaction: a conflict surfaces at their commit, not here
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      return work.get();
+    }
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return tx.execute(status -> work.get());
+      } catch (ConcurrencyFailureException e) {
+        if (attempt >= maxAttempts) {
+          exhausted.increment();
+          throw e;
+        }
+        retried.increment();
+        log.debug("Write conflict, attempt {} of {}: {}", attempt, maxAttempts, e.getMessage());
+        pause(attempt);
+      }
+    }
+  }
+
+  public void runInTransaction(Runnable work) {
+    inTransaction(() -> {
+      work.run();
+      return null;
+    });
+  }
+
+  // jittered, growing with each attempt, so two retrying losers don't collide again
+  private void pause(int attempt) {
+    if (backoffMs <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMs * attempt + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while retrying a write", e);
+    }
+  }
+}
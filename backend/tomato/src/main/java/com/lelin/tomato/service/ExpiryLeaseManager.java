@@ -0,0 +1,125 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.model.SchedulerLease;
+import com.lelin.tomato.model.SchedulerNode;
+import com.lelin.tomato.repository.SchedulerLeaseRepository;
+import com.lelin.tomato.repository.SchedulerNodeRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Spreads time bomb expiry across backend instances. Tasks are split into
+ * userId % partitions buckets and each node leases a fair share of them
+ * through the scheduler_leases table, renewing on every scheduler run.
+ * A crashed node's partitions are picked up once its leases run out.
+ */
+@Component
+@RequiredArgsConstructor
+public class ExpiryLeaseManager {
+
+  private final SchedulerLeaseRepository leaseRepo;
+  private final SchedulerNodeRepository nodeRepo;
+
+  @Getter
+  @Value("${app.scheduler.cluster.partitions:16}")
+  private int partitions;
+
+  // must comfortably exceed the scheduler period, or leases lapse between runs
+  @Value("${app.scheduler.cluster.lease-seconds:90}")
+  private long leaseSeconds;
+
+  @Getter
+  @Value("${app.scheduler.cluster.node-id:}")
+  private String nodeId;
+
+  @Getter
+  private volatile Set<Integer> ownedPartitions = Collections.emptySet();
+
+  private volatile boolean seeded = false;
+
+  @PostConstruct
+  void init() {
+    if (nodeId == null || nodeId.isBlank()) {
+      nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+  }
+
+  /**
+   * Heartbeats this node, renews held leases and claims or gives back
+   * partitions so every live node ends up with roughly partitions / nodes.
+   */
+  public Set<Integer> refresh() {
+    seedPartitions();
+
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime until = now.plusSeconds(leaseSeconds);
+
+    nodeRepo.save(new SchedulerNode(nodeId, now));
+    nodeRepo.deleteByLastSeenBefore(now.minusSeconds(leaseSeconds * 10));
+
+    long liveNodes = Math.max(1, nodeRepo.countByLastSeenAfter(now.minusSeconds(leaseSeconds)));
+    int fairShare = (int) ((partitions + liveNodes - 1) / liveNodes);
+
+    List<SchedulerLease> leases = leaseRepo.findAll();
+    Set<Integer> owned = new TreeSet<>();
+
+    // renew what we hold, handing back anything above our fair share
+    for (SchedulerLease lease : leases) {
+      if (!nodeId.equals(lease.getOwner()) || !lease.isHeldAt(now)) continue;
+
+      if (owned.size() >= fairShare) {
+        leaseRepo.release(lease.getPartitionId(), nodeId);
+      } else if (leaseRepo.tryClaim(lease.getPartitionId(), nodeId, now, until) == 1) {
+        owned.add(lease.getPartitionId());
+      }
+    }
+
+    // pick up free or abandoned partitions
+    for (SchedulerLease lease : leases) {
+      if (owned.size() >= fairShare) break;
+      if (owned.contains(lease.getPartitionId())) continue;
+      if (lease.isHeldAt(now) && !nodeId.equals(lease.getOwner())) continue;
+
+      if (leaseRepo.tryClaim(lease.getPartitionId(), nodeId, now, until) == 1) {
+        owned.add(lease.getPartitionId());
+      }
+    }
+
+    ownedPartitions = Collections.unmodifiableSet(owned);
+    return ownedPartitions;
+  }
+
+  private void seedPartitions() {
+    if (seeded) return;
+
+    for (int p = 0; p < partitions; p++) {
+      if (leaseRepo.existsById(p)) continue;
+      try {
+        leaseRepo.save(new SchedulerLease(p, null, null));
+      } catch (DataIntegrityViolationException e) {
+        // another node inserted it first
+      }
+    }
+    seeded = true;
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (Exception e) {
+      return "node";
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recomputes the per-user garden counters from the tomatoes and punishments
+ * tables and rewrites any that drifted (manual fixes, bugs, rows written
+ * before the counters existed). Walks users in id ranges, one UPDATE per
+ * range, so it never holds more than a range's worth of locks. The daily
+ * tomato rollup is checked per range too and rebuilt where its total is off.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GardenCounterReconciler {
+
+  private final UserRepository userRepo;
+  private final TomatoService tomatoService;
+
+  @Value("${app.counters.reconcile-batch:1000}")
+  private int batchSize;
+
+  @Scheduled(initialDelayString = "${app.counters.reconcile-initial-delay-ms:60000}",
+      fixedDelayString = "${app.counters.reconcile-ms:3600000}") // hourly
+  public void scheduledReconcile() {
+    reconcile();
+  }
+
+  // returns how many user rows had drifted
+  public int reconcile() {
+    long maxId = userRepo.findMaxId();
+    int repaired = 0;
+    int rebuiltRanges = 0;
+
+    for (long afterId = 0; afterId < maxId; afterId += batchSize) {
+      long toId = afterId + batchSize;
+      repaired += userRepo.repairTomatoCounts(afterId, toId);
+      repaired += userRepo.repairPunishmentCounts(afterId, toId, User.MAX_INFESTATION_LEVEL);
+      if (tomatoService.repairRollups(afterId, toId)) {
+        rebuiltRanges++;
+      }
+    }
+
+    if (repaired > 0) {
+      log.warn("Repaired drifted garden counters on {} user rows", repaired);
+    }
+    if (rebuiltRanges > 0) {
+      log.warn("Rebuilt the daily tomato rollup for {} user id ranges", rebuiltRanges);
+    }
+    return repaired;
+  }
+}
@@ -0,0 +1,285 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.GardenEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-user SSE fan-out of GardenEvents.
+ *
+ * Each user with a live (or recently live) connection has a channel holding a
+ * bounded replay buffer, so a client reconnecting with Last-Event-ID gets what it
+ * missed; if that is no longer buffered it gets RESYNC and should refetch GET /garden.
+ * Publishers never block on the network: every subscriber has a bounded queue
+ * drained by a small sender pool, and a subscriber that lets its queue fill up is
+ * disconnected (it reconnects and replays). Event ids are "epoch-seq" per channel,
+ * so ids from before a restart or an evicted channel are recognised as unknown.
+ *
+ * Events only reach subscribers connected to this instance.
+ */
+@Slf4j
+@Component
+public class GardenEventStream {
+
+  public static final String CONNECTED = "CONNECTED";
+  public static final String RESYNC = "RESYNC";
+
+  private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+  private final ExecutorService sender;
+
+  private final int replaySize;
+  private final int queueSize;
+  private final int maxSubscribersPerUser;
+  private final long emitterTimeoutMs;
+  private final long idleMs;
+
+  public GardenEventStream(
+      @Value("${app.events.replay-size:100}") int replaySize,
+      @Value("${app.events.queue-size:256}") int queueSize,
+      @Value("${app.events.max-subscribers-per-user:5}") int maxSubscribersPerUser,
+      @Value("${app.events.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+      @Value("${app.events.channel-idle-ms:600000}") long idleMs,
+      @Value("${app.events.sender-threads:4}") int senderThreads,
+      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+    this.replaySize = replaySize;
+    this.queueSize = queueSize;
+    this.maxSubscribersPerUser = maxSubscribersPerUser;
+    this.emitterTimeoutMs = emitterTimeoutMs;
+    this.idleMs = idleMs;
+    // sends block on the socket: cheap with a virtual thread per drain, pooled otherwise
+    this.sender = virtualThreads
+        ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("garden-sse-", 0).factory())
+        : Executors.newFixedThreadPool(senderThreads,
+            Thread.ofPlatform().name("garden-sse-", 0).daemon().factory());
+  }
+
+  // One SSE frame; heartbeats have no name (sent as a comment)
+  private record Frame(String id, String name, Object data) {
+  }
+
+  // After commit, so clients never hear about changes that were rolled back;
+  // fallbackExecution covers publishers that run without a transaction.
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onGardenEvent(GardenEvent event) {
+    Channel channel = channels.get(event.userId());
+    if (channel != null) {
+      channel.publish(event.type().name(), event.data());
+    }
+  }
+
+  public SseEmitter subscribe(Long userId, String lastEventId) {
+    SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+    Channel channel = channels.compute(userId, (id, existing) -> {
+      Channel ch = existing != null ? existing : new Channel();
+      ch.touch();
+      return ch;
+    });
+    Subscriber subscriber = new Subscriber(channel, emitter);
+
+    emitter.onCompletion(subscriber::closed);
+    emitter.onTimeout(subscriber::closed);
+    emitter.onError(e -> subscriber.closed());
+    channel.attach(subscriber, lastEventId);
+    return emitter;
+  }
+
+  // Keeps proxies and load balancers from cutting idle streams, notices dead
+  // connections, and drops channels nobody has listened to for a while.
+  @Scheduled(fixedDelayString = "${app.events.heartbeat-ms:15000}")
+  public void heartbeat() {
+    long idleBefore = System.currentTimeMillis() - idleMs;
+    for (Map.Entry<Long, Channel> e : channels.entrySet()) {
+      e.getValue().heartbeat();
+      channels.computeIfPresent(e.getKey(), (id, ch) -> ch.isIdleSince(idleBefore) ? null : ch);
+    }
+  }
+
+  public int getSubscriberCount() {
+    return channels.values().stream().mapToInt(ch -> ch.subscribers.size()).sum();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    channels.values().forEach(ch -> ch.subscribers.forEach(Subscriber::close));
+    sender.shutdownNow();
+  }
+
+  private final class Channel {
+
+    private final long epoch = System.currentTimeMillis();
+    // a lock rather than synchronized, so virtual threads don't pin on it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Frame> replay = new ArrayDeque<>(); // guarded by lock
+    private long seq; // guarded by lock
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile long lastActive = System.currentTimeMillis();
+
+    void publish(String name, Object data) {
+      lock.lock();
+      try {
+        Frame frame = new Frame(epoch + "-" + (++seq), name, data);
+        replay.addLast(frame);
+        if (replay.size() > replaySize) {
+          replay.removeFirst();
+        }
+        subscribers.forEach(s -> s.offer(frame));
+        touch();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    // under the same lock as publish, so nothing lands between the replay and going live
+    void attach(Subscriber subscriber, String lastEventId) {
+      lock.lock();
+      try {
+        String currentId = epoch + "-" + seq;
+        List<Frame> missed = missedSince(lastEventId);
+        if (missed == null) {
+          subscriber.offer(new Frame(currentId, RESYNC, currentId));
+        } else {
+          subscriber.offer(new Frame(currentId, CONNECTED, currentId));
+          missed.forEach(subscriber::offer);
+        }
+
+        subscribers.add(subscriber);
+        while (subscribers.size() > maxSubscribersPerUser) {
+          subscribers.getFirst().close(); // oldest connection goes
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    // null when the client may have missed something we no longer have
+    private List<Frame> missedSince(String lastEventId) {
+      if (lastEventId == null || lastEventId.isBlank()) {
+        return List.of();
+      }
+      String[] parts = lastEventId.split("-", 2);
+      try {
+        if (parts.length != 2 || Long.parseLong(parts[0]) != epoch) {
+          return null;
+        }
+        long lastSeq = Long.parseLong(parts[1]);
+        long oldestBuffered = seq - replay.size() + 1;
+        if (lastSeq > seq || lastSeq < oldestBuffered - 1) {
+          return null;
+        }
+        return replay.stream().skip(lastSeq - oldestBuffered + 1).toList();
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    void detach(Subscriber subscriber) {
+      subscribers.remove(subscriber);
+      touch();
+    }
+
+    void heartbeat() {
+      subscribers.forEach(s -> s.offer(new Frame(null, null, "ping")));
+    }
+
+    void touch() {
+      lastActive = System.currentTimeMillis();
+    }
+
+    boolean isIdleSince(long cutoff) {
+      return subscribers.isEmpty() && lastActive < cutoff;
+    }
+  }
+
+  private final class Subscriber {
+
+    private final Channel channel;
+    private final SseEmitter emitter;
+    private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(queueSize);
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    Subscriber(Channel channel, SseEmitter emitter) {
+      this.channel = channel;
+      this.emitter = emitter;
+    }
+
+    void offer(Frame frame) {
+      if (closed) {
+        return;
+      }
+      if (!queue.offer(frame)) {
+        // slow consumer: cut it loose rather than buffer without bound
+        log.debug("SSE subscriber fell {} events behind, disconnecting", queueSize);
+        close();
+        return;
+      }
+      scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+      if (draining.compareAndSet(false, true)) {
+        sender.execute(this::drain);
+      }
+    }
+
+    private void drain() {
+      try {
+        Frame frame;
+        while (!closed && (frame = queue.poll()) != null) {
+          send(frame);
+        }
+      } catch (IOException | IllegalStateException e) {
+        close();
+      } finally {
+        draining.set(false);
+        if (!closed && !queue.isEmpty()) {
+          scheduleDrain();
+        }
+      }
+    }
+
+    private void send(Frame frame) throws IOException {
+      if (frame.name() == null) {
+        emitter.send(SseEmitter.event().comment(String.valueOf(frame.data())));
+        return;
+      }
+      emitter.send(SseEmitter.event()
+          .id(frame.id())
+          .name(frame.name())
+          .data(frame.data()));
+    }
+
+    // we end the stream: slow consumer, failed write, replaced or shutting down
+    void close() {
+      if (!closed) {
+        closed();
+        emitter.complete();
+      }
+    }
+
+    // the stream ended, either way
+    void closed() {
+      closed = true;
+      queue.clear();
+      channel.detach(this);
+    }
+  }
+}
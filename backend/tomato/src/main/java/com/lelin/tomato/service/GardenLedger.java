@@ -0,0 +1,268 @@
+package com.lelin.tomato.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.GardenLedgerState;
+import com.lelin.tomato.model.GardenLedgerEntry;
+import com.lelin.tomato.model.GardenLedgerSnapshot;
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.Tomato;
+import com.lelin.tomato.repository.GardenLedgerRepository;
+import com.lelin.tomato.repository.GardenLedgerSnapshotRepository;
+import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.TaskRepository;
+import com.lelin.tomato.repository.TomatoRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only history of every garden change: tasks created, completed, expired and
+ * deleted, tomatoes earned and revoked, punishments raised and resolved. The services
+ * already announce each of these as a GardenEvent; the ledger collects them during the
+ * transaction and appends them in one JDBC batch just before it commits, so an entry
+ * exists exactly when its change does.
+ *
+ * Each user's entries are numbered 1, 2, 3... under the user's row lock (SyncService),
+ * so seq order is commit order. Every app.ledger.snapshot-every entries the folded
+ * state is stored as a snapshot, and a user's state is read back from the latest
+ * snapshot plus the short tail after it. The first snapshot is a baseline taken from
+ * the live rows, covering everything that happened before the ledger did.
+ * GardenLedgerReplay rebuilds the counters and snapshots from it.
+ */
+@Service
+public class GardenLedger {
+
+  // per-transaction list of entries to append before commit
+  private static final Object TX_PENDING = new Object();
+
+  private final GardenLedgerRepository ledgerRepo;
+  private final GardenLedgerSnapshotRepository snapshotRepo;
+  private final TaskRepository taskRepo;
+  private final TomatoRepository tomatoRepo;
+  private final PunishmentRepository punishmentRepo;
+  private final SyncService syncService;
+  private final JdbcTemplate jdbcTemplate;
+  private final ObjectMapper objectMapper;
+  private final TransactionTemplate tx;
+  private final int snapshotEvery;
+
+  public GardenLedger(GardenLedgerRepository ledgerRepo, GardenLedgerSnapshotRepository snapshotRepo,
+      TaskRepository taskRepo, TomatoRepository tomatoRepo, PunishmentRepository punishmentRepo,
+      SyncService syncService, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+      PlatformTransactionManager transactionManager,
+      @Value("${app.ledger.snapshot-every:100}") int snapshotEvery) {
+    this.ledgerRepo = ledgerRepo;
+    this.snapshotRepo = snapshotRepo;
+    this.taskRepo = taskRepo;
+    this.tomatoRepo = tomatoRepo;
+    this.punishmentRepo = punishmentRepo;
+    this.syncService = syncService;
+    this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.tx = new TransactionTemplate(transactionManager);
+    this.snapshotEvery = Math.max(1, snapshotEvery);
+  }
+
+  // In the publisher's transaction, unlike the after-commit listeners
+  @EventListener
+  public void onGardenEvent(GardenEvent event) {
+    GardenLedgerEntry entry = toEntry(event);
+    if (entry == null) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      tx.executeWithoutResult(status -> append(List.of(entry)));
+      return;
+    }
+    pendingInThisTransaction().add(entry);
+  }
+
+  // The user's garden as of their last ledger entry
+  @Transactional(readOnly = true)
+  public GardenLedgerState currentState(Long userId) {
+    return snapshotRepo.findFirstByUserIdOrderBySeqDesc(userId)
+        .map(snapshot -> fold(read(snapshot), ledgerRepo.findTail(userId, snapshot.getSeq())))
+        // nothing recorded yet: the live rows are the whole story
+        .orElseGet(() -> baseline(userId));
+  }
+
+  public static GardenLedgerState fold(GardenLedgerState state, List<GardenLedgerEntry> entries) {
+    for (GardenLedgerEntry e : entries) {
+      apply(state, e);
+    }
+    return state;
+  }
+
+  public static void apply(GardenLedgerState state, GardenLedgerEntry e) {
+    switch (e.getType()) {
+      case TASK_CREATED -> state.getOpenTaskIds().add(e.getTaskId());
+      case TASK_COMPLETED, TASK_DELETED -> {
+        state.getOpenTaskIds().remove(e.getTaskId());
+        state.getOverdueTaskIds().remove(e.getTaskId());
+      }
+      case TASK_EXPIRED -> {
+        if (state.getOpenTaskIds().contains(e.getTaskId())) {
+          state.getOverdueTaskIds().add(e.getTaskId());
+        }
+      }
+      case TOMATO_EARNED -> state.setTomatoCount(state.getTomatoCount() + e.getAmount());
+      case TOMATO_REMOVED -> state.setTomatoCount(Math.max(0, state.getTomatoCount() - e.getAmount()));
+      case PUNISHMENT_CREATED -> state.setActivePunishments(state.getActivePunishments() + 1);
+      case PUNISHMENT_RESOLVED -> state.setActivePunishments(Math.max(0, state.getActivePunishments() - 1));
+      case TASK_UPDATED -> {
+        // not recorded
+      }
+    }
+  }
+
+  // the state as the live rows have it right now
+  GardenLedgerState baseline(Long userId) {
+    return new GardenLedgerState(
+        new TreeSet<>(taskRepo.findOpenIds(userId)),
+        new TreeSet<>(taskRepo.findOverdueIds(userId)),
+        tomatoRepo.countByUserId(userId),
+        (int) punishmentRepo.countByUserIdAndResolvedFalse(userId));
+  }
+
+  GardenLedgerState read(GardenLedgerSnapshot snapshot) {
+    try {
+      return objectMapper.readValue(snapshot.getState(), GardenLedgerState.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unreadable ledger snapshot " + snapshot.getId(), e);
+    }
+  }
+
+  GardenLedgerSnapshot snapshot(Long userId, long seq, GardenLedgerState state) {
+    try {
+      return snapshotRepo.save(GardenLedgerSnapshot.builder()
+          .userId(userId)
+          .seq(seq)
+          .state(objectMapper.writeValueAsString(state))
+          .createdAt(LocalDateTime.now())
+          .build());
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Ledger state can't be serialized", e);
+    }
+  }
+
+  private void append(List<GardenLedgerEntry> entries) {
+    Map<Long, List<GardenLedgerEntry>> byUser = entries.stream()
+        .collect(Collectors.groupingBy(GardenLedgerEntry::getUserId, LinkedHashMap::new, Collectors.toList()));
+    // already held by the writer; taken here for any that didn't, so seq follows commit order
+    syncService.versions(byUser.keySet());
+
+    Map<Long, long[]> seqRanges = new LinkedHashMap<>();
+    byUser.forEach((userId, own) -> {
+      long last = ledgerRepo.findMaxSeq(userId);
+      long before = last;
+      for (GardenLedgerEntry e : own) {
+        e.setSeq(++last);
+      }
+      seqRanges.put(userId, new long[] {before, last});
+    });
+
+    // IDENTITY ids, so a JDBC batch as for punishments and tomatoes
+    jdbcTemplate.batchUpdate(
+        "insert into garden_ledger (user_id, seq, type, task_id, ref_id, amount, occurred_at) "
+            + "values (?, ?, ?, ?, ?, ?, ?)",
+        entries,
+        entries.size(),
+        (ps, e) -> {
+          ps.setLong(1, e.getUserId());
+          ps.setLong(2, e.getSeq());
+          ps.setString(3, e.getType().name());
+          ps.setObject(4, e.getTaskId());
+          ps.setObject(5, e.getRefId());
+          ps.setInt(6, e.getAmount());
+          ps.setTimestamp(7, Timestamp.valueOf(e.getOccurredAt()));
+        });
+
+    seqRanges.forEach((userId, range) -> {
+      long before = range[0];
+      long last = range[1];
+      if (before == 0) {
+        // first entries for this user: the rows already include them
+        snapshot(userId, last, baseline(userId));
+      } else if (last / snapshotEvery > before / snapshotEvery) {
+        GardenLedgerSnapshot latest = snapshotRepo.findFirstByUserIdOrderBySeqDesc(userId).orElseThrow();
+        snapshot(userId, last, fold(read(latest), ledgerRepo.findTail(userId, latest.getSeq())));
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<GardenLedgerEntry> pendingInThisTransaction() {
+    List<GardenLedgerEntry> pending = (List<GardenLedgerEntry>) TransactionSynchronizationManager.getResource(TX_PENDING);
+    if (pending == null) {
+      List<GardenLedgerEntry> created = new ArrayList<>();
+      pending = created;
+      TransactionSynchronizationManager.bindResource(TX_PENDING, created);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          append(created);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(TX_PENDING);
+        }
+      });
+    }
+    return pending;
+  }
+
+  // null for events the ledger doesn't record (edits to a task's text or deadline)
+  private static GardenLedgerEntry toEntry(GardenEvent event) {
+    if (event.type() == GardenEvent.Type.TASK_UPDATED) {
+      return null;
+    }
+    GardenLedgerEntry entry = GardenLedgerEntry.builder()
+        .userId(event.userId())
+        .type(event.type())
+        .amount(1)
+        .occurredAt(LocalDateTime.now())
+        .build();
+    switch (event.data()) {
+      case Task t -> entry.setTaskId(t.getId());
+      case Tomato t -> {
+        entry.setTaskId(t.getTaskId());
+        entry.setRefId(t.getId());
+      }
+      case Punishment p -> {
+        entry.setTaskId(p.getTaskId());
+        entry.setRefId(p.getId());
+      }
+      // {taskId} for expiries and deletes, {taskId(s), count} for revoked tomatoes
+      case Map<?, ?> m -> {
+        if (m.get("taskId") instanceof Number n) {
+          entry.setTaskId(n.longValue());
+        }
+        if (m.get("count") instanceof Number n) {
+          entry.setAmount(n.intValue());
+        }
+      }
+      case null, default -> {
+      }
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,117 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.GardenLedgerState;
+import com.lelin.tomato.model.GardenLedgerEntry;
+import com.lelin.tomato.model.GardenLedgerSnapshot;
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.GardenLedgerRepository;
+import com.lelin.tomato.repository.GardenLedgerSnapshotRepository;
+import com.lelin.tomato.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds the projections from the garden ledger: for each user, folds every entry
+ * onto their baseline snapshot, writes the result to the counters on the users row
+ * (tomatoCount, activePunishmentCount, infestationLevel) and replaces the later
+ * snapshots with one at the tip. One transaction per user, holding the user's row
+ * lock, so it can run next to live traffic.
+ *
+ * As a one-off run:
+ *   java -jar tomato.jar --spring.main.web-application-type=none --ledger.replay
+ *   (--ledger.replay=12,34 for just those users)
+ */
+@Slf4j
+@Component
+public class GardenLedgerReplay implements ApplicationRunner {
+
+  private final GardenLedger ledger;
+  private final GardenLedgerRepository ledgerRepo;
+  private final GardenLedgerSnapshotRepository snapshotRepo;
+  private final UserRepository userRepo;
+  private final SyncService syncService;
+  private final ApplicationContext context;
+  private final TransactionTemplate tx;
+  private final int batchSize;
+
+  public GardenLedgerReplay(GardenLedger ledger, GardenLedgerRepository ledgerRepo,
+      GardenLedgerSnapshotRepository snapshotRepo, UserRepository userRepo, SyncService syncService,
+      ApplicationContext context, PlatformTransactionManager transactionManager,
+      @Value("${app.ledger.replay-batch:500}") int batchSize) {
+    this.ledger = ledger;
+    this.ledgerRepo = ledgerRepo;
+    this.snapshotRepo = snapshotRepo;
+    this.userRepo = userRepo;
+    this.syncService = syncService;
+    this.context = context;
+    this.tx = new TransactionTemplate(transactionManager);
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!args.containsOption("ledger.replay")) {
+      return;
+    }
+    List<Long> userIds = args.getOptionValues("ledger.replay").stream()
+        .flatMap(v -> Arrays.stream(v.split(",")))
+        .filter(v -> !v.isBlank())
+        .map(v -> Long.valueOf(v.trim()))
+        .toList();
+    int replayed = userIds.isEmpty() ? replayAll() : (int) userIds.stream().filter(this::replay).count();
+    log.info("Replayed the garden ledger for {} users", replayed);
+    System.exit(SpringApplication.exit(context, () -> 0));
+  }
+
+  // returns how many users had a ledger
+  public int replayAll() {
+    int replayed = 0;
+    long afterId = 0;
+    List<Long> page;
+    do {
+      page = snapshotRepo.findUserIdsAfter(afterId, PageRequest.of(0, batchSize));
+      for (Long userId : page) {
+        if (replay(userId)) {
+          replayed++;
+        }
+      }
+      if (!page.isEmpty()) {
+        afterId = page.get(page.size() - 1);
+      }
+    } while (page.size() == batchSize);
+    return replayed;
+  }
+
+  // false if the user has nothing in the ledger
+  public boolean replay(Long userId) {
+    return Boolean.TRUE.equals(tx.execute(status -> {
+      // the row lock orders us with the user's writers; the new version reloads cached gardens
+      syncService.version(userId);
+      GardenLedgerSnapshot baseline = snapshotRepo.findFirstByUserIdOrderBySeqAsc(userId).orElse(null);
+      if (baseline == null) {
+        return false;
+      }
+      List<GardenLedgerEntry> tail = ledgerRepo.findTail(userId, baseline.getSeq());
+      GardenLedgerState state = GardenLedger.fold(ledger.read(baseline), tail);
+
+      snapshotRepo.deleteAfter(userId, baseline.getSeq());
+      if (!tail.isEmpty()) {
+        ledger.snapshot(userId, tail.get(tail.size() - 1).getSeq(), state);
+      }
+      userRepo.setGardenCounters(userId, state.getTomatoCount(), state.getActivePunishments(),
+          Math.min(state.getActivePunishments(), User.MAX_INFESTATION_LEVEL));
+      return true;
+    }));
+  }
+}
@@ -0,0 +1,80 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.GardenSnapshot;
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+
+@Service
+public class GardenService {
+
+  private final TaskService taskService;
+  private final PunishmentService punishmentService;
+  private final UserRepository userRepo;
+  private final GardenStateCache cache;
+  private final TransactionTemplate readOnlyTx;
+
+  public GardenService(TaskService taskService, PunishmentService punishmentService,
+      UserRepository userRepo, GardenStateCache cache, PlatformTransactionManager transactionManager) {
+    this.taskService = taskService;
+    this.punishmentService = punishmentService;
+    this.userRepo = userRepo;
+    this.cache = cache;
+    this.readOnlyTx = new TransactionTemplate(transactionManager);
+    this.readOnlyTx.setReadOnly(true);
+  }
+
+  // A cache hit costs one primary-key read of the user's change version
+  public GardenSnapshot getSnapshot(Long userId) {
+    long changeVersion = userRepo.findChangeVersion(userId)
+        .orElseThrow(() -> new RuntimeException("User not found"));
+    GardenSnapshot cached = cache.get(userId, changeVersion);
+    if (cached != null) {
+      return cached;
+    }
+    return readOnlyTx.execute(status -> load(userId));
+  }
+
+  // One read-only transaction, so the three parts are consistent with each other.
+  // The version is read first: a write landing mid-read makes the entry look older
+  // than its contents, never newer, so it is reloaded rather than served stale.
+  private GardenSnapshot load(Long userId) {
+    User user = userRepo.findById(userId)
+        .orElseThrow(() -> new RuntimeException("User not found"));
+    long changeVersion = user.getChangeVersion();
+    List<Task> tasks = taskService.getOpenTasks(userId);
+    List<Punishment> active = punishmentService.getActiveForUser(userId);
+
+    // counters come straight off the user row, no COUNT(*)
+    long tomatoCount = user.getTomatoCount();
+
+    GardenSnapshot snapshot = GardenSnapshot.builder()
+        .tasks(tasks)
+        .tomatoCount(tomatoCount)
+        .infestationLevel(user.getInfestationLevel())
+        .activePunishments(active)
+        .version(version(tasks, tomatoCount, active))
+        .build();
+    cache.put(userId, changeVersion, snapshot);
+    return snapshot;
+  }
+
+  private String version(List<Task> tasks, long tomatoCount, List<Punishment> active) {
+    long hash = tomatoCount;
+    for (Task t : tasks) {
+      hash = 31 * hash + Objects.hash(t.getId(), t.getTitle(), t.getDescription(), t.getPriority(),
+          t.getDueTime(), t.getCompletedAt(), t.isExpired(), t.isCompleted(), t.getTomatoesEarned());
+    }
+    for (Punishment p : active) {
+      hash = 31 * hash + Objects.hash(p.getId(), p.getType());
+    }
+    return Long.toHexString(hash);
+  }
+}
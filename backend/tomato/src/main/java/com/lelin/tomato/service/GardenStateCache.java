@@ -0,0 +1,113 @@
+package com.lelin.tomato.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.GardenSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Bounded, TTL-evicting cache of each user's garden snapshot (open tasks, tomato
+ * count, infestation, active punishments), filled on read by GardenService. Bounded
+ * by weight rather than entry count: an entry weighs one plus its tasks and
+ * punishments, so a few huge gardens can't hold as much heap as max-weight small ones.
+ *
+ * Every entry is tagged with the user's change version it was read at, and a hit is
+ * only served while users.change_version still matches. Every write to a garden takes
+ * a new version (SyncService), so a committed write is never followed by a stale
+ * read, whichever node or scheduler made it. On top of that the writers' GardenEvents
+ * drop the entry after commit, so the next read reloads instead of finding a
+ * mismatch.
+ */
+@Component
+public class GardenStateCache {
+
+  private record Entry(long changeVersion, GardenSnapshot snapshot) {
+  }
+
+  private final Cache<Long, Entry> cache;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter stale;
+
+  public GardenStateCache(MeterRegistry registry,
+      @Value("${app.garden.cache.max-weight:200000}") long maxWeight,
+      @Value("${app.garden.cache.ttl-seconds:300}") long ttlSeconds) {
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxWeight)
+        .weigher((Long userId, Entry entry) -> weight(entry.snapshot()))
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .recordStats()
+        .build();
+    this.hits = lookups(registry, "hit");
+    this.misses = lookups(registry, "miss");
+    this.stale = lookups(registry, "stale");
+    FunctionCounter.builder("garden.cache.evictions", cache, c -> c.stats().evictionCount())
+        .description("Garden snapshots evicted for size or age")
+        .register(registry);
+    Gauge.builder("garden.cache.size", cache, Cache::estimatedSize)
+        .description("Garden snapshots held")
+        .register(registry);
+  }
+
+  // null unless the cached snapshot was read at the user's current change version
+  public GardenSnapshot get(Long userId, long changeVersion) {
+    Entry entry = cache.asMap().get(userId);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    if (entry.changeVersion() != changeVersion) {
+      stale.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.snapshot();
+  }
+
+  // changeVersion must have been read before the snapshot, in the same transaction.
+  // Of two racing loads the one read at the higher version stays.
+  public void put(Long userId, long changeVersion, GardenSnapshot snapshot) {
+    cache.asMap().merge(userId, new Entry(changeVersion, snapshot),
+        (old, loaded) -> loaded.changeVersion() >= old.changeVersion() ? loaded : old);
+  }
+
+  public void invalidate(Long userId) {
+    cache.invalidate(userId);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  // After commit, like GardenEventStream: dropping it earlier could let a concurrent
+  // read cache the pre-commit garden again.
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onGardenEvent(GardenEvent event) {
+    invalidate(event.userId());
+  }
+
+  static int weight(GardenSnapshot snapshot) {
+    return 1 + size(snapshot.getTasks()) + size(snapshot.getActivePunishments());
+  }
+
+  private static int size(List<?> items) {
+    return items == null ? 0 : items.size();
+  }
+
+  private static Counter lookups(MeterRegistry registry, String result) {
+    return Counter.builder("garden.cache.requests")
+        .description("Garden snapshot lookups, by result (stale: cached at an older change version)")
+        .tag("result", result)
+        .register(registry);
+  }
+}
@@ -0,0 +1,172 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.ArchiveCandidate;
+import com.lelin.tomato.model.SyncTombstone;
+import com.lelin.tomato.repository.ArchivedPunishmentRepository;
+import com.lelin.tomato.repository.ArchivedTaskRepository;
+import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.TaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Moves cold history out of the hot tables: tasks completed, and punishments resolved,
+ * more than app.archive.after-days ago go to tasks_archive and punishments_archive,
+ * keeping their ids. GET /tasks and GET /punishments only read them back with
+ * ?includeArchived=true.
+ *
+ * Works in batches of app.archive.batch-size rows, each its own short transaction
+ * (INSERT ... SELECT, then DELETE of the same rows) with a pause in between, and at
+ * most app.archive.max-batches per run, so it never competes with the app for long.
+ * Each batch first takes a new change version for the users it touches, which is the
+ * same lock order as every other garden writer (user row first) and drops their
+ * cached gardens. The moved ids get sync tombstones at that version, so offline
+ * clients drop them from their copy just as the live list did.
+ */
+@Slf4j
+@Component
+public class HistoryArchiver {
+
+  private final TaskRepository taskRepo;
+  private final PunishmentRepository punishmentRepo;
+  private final ArchivedTaskRepository archivedTaskRepo;
+  private final ArchivedPunishmentRepository archivedPunishmentRepo;
+  private final SyncService syncService;
+  private final TransactionTemplate tx;
+  private final Counter tasksMoved;
+  private final Counter punishmentsMoved;
+
+  @Value("${app.archive.after-days:90}")
+  private int afterDays;
+
+  @Value("${app.archive.batch-size:500}")
+  private int batchSize;
+
+  @Value("${app.archive.pause-ms:200}")
+  private long pauseMs;
+
+  @Value("${app.archive.max-batches:200}")
+  private int maxBatches;
+
+  public HistoryArchiver(TaskRepository taskRepo, PunishmentRepository punishmentRepo,
+      ArchivedTaskRepository archivedTaskRepo, ArchivedPunishmentRepository archivedPunishmentRepo,
+      SyncService syncService, PlatformTransactionManager transactionManager, MeterRegistry registry) {
+    this.taskRepo = taskRepo;
+    this.punishmentRepo = punishmentRepo;
+    this.archivedTaskRepo = archivedTaskRepo;
+    this.archivedPunishmentRepo = archivedPunishmentRepo;
+    this.syncService = syncService;
+    this.tx = new TransactionTemplate(transactionManager);
+    this.tasksMoved = moved(registry, "tasks");
+    this.punishmentsMoved = moved(registry, "punishments");
+  }
+
+  @Scheduled(initialDelayString = "${app.archive.initial-delay-ms:300000}",
+      fixedDelayString = "${app.archive.interval-ms:3600000}") // hourly
+  public void scheduledArchive() {
+    archive();
+  }
+
+  // returns how many rows were moved, tasks and punishments together
+  public int archive() {
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+    int moved = drain(new Table("tasks", SyncTombstone.Type.TASK, taskRepo::findArchivable,
+        archivedTaskRepo::copyFromLive, taskRepo::deleteArchived, archivedTaskRepo::findMoved,
+        tasksMoved), cutoff);
+    moved += drain(new Table("punishments", SyncTombstone.Type.PUNISHMENT,
+        punishmentRepo::findArchivable, archivedPunishmentRepo::copyFromLive,
+        punishmentRepo::deleteArchived, archivedPunishmentRepo::findMoved, punishmentsMoved), cutoff);
+    if (moved > 0) {
+      log.info("Archived {} completed tasks and resolved punishments older than {}", moved, cutoff);
+    }
+    return moved;
+  }
+
+  // one live table and how to move its rows into the archive
+  private record Table(String name, SyncTombstone.Type type,
+      BiFunction<LocalDateTime, PageRequest, List<ArchiveCandidate>> find,
+      BiFunction<Set<Long>, LocalDateTime, Integer> copy,
+      BiFunction<Set<Long>, LocalDateTime, Integer> delete,
+      Function<Set<Long>, List<ArchiveCandidate>> moved,
+      Counter counter) {
+  }
+
+  private int drain(Table table, LocalDateTime cutoff) {
+    PageRequest page = PageRequest.of(0, Math.max(1, batchSize));
+    int total = 0;
+    for (int batch = 0; batch < maxBatches; batch++) {
+      if (batch > 0 && !pause()) {
+        break;
+      }
+      Integer moved = tx.execute(status -> {
+        List<ArchiveCandidate> candidates = table.find().apply(cutoff, page);
+        if (candidates.isEmpty()) {
+          return 0;
+        }
+        // user rows first, like every writer; sorted so two archivers can't deadlock
+        syncService.versions(candidates.stream().map(ArchiveCandidate::userId)
+            .collect(Collectors.toCollection(TreeSet::new)));
+        Set<Long> ids = candidates.stream().map(ArchiveCandidate::id)
+            .collect(Collectors.toCollection(TreeSet::new));
+        int copied = table.copy().apply(ids, cutoff);
+        int deleted = table.delete().apply(ids, cutoff);
+        if (copied != deleted) {
+          throw new IllegalStateException("Archiving " + table.name() + " copied " + copied
+              + " rows but deleted " + deleted);
+        }
+        // only the rows still archivable once their owner was locked actually moved
+        table.moved().apply(ids).stream()
+            .collect(Collectors.groupingBy(ArchiveCandidate::userId, TreeMap::new,
+                Collectors.mapping(ArchiveCandidate::id, Collectors.toList())))
+            .forEach((userId, movedIds) -> syncService.recordDeleted(userId, table.type(), movedIds));
+        return deleted;
+      });
+      if (moved == null || moved == 0) {
+        break;
+      }
+      table.counter().increment(moved);
+      total += moved;
+      if (moved < page.getPageSize()) {
+        break;
+      }
+    }
+    return total;
+  }
+
+  // false if interrupted (shutdown): stop after the batch that just committed
+  private boolean pause() {
+    if (pauseMs <= 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(pauseMs);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static Counter moved(MeterRegistry registry, String table) {
+    return Counter.builder("archive.moved")
+        .description("Rows moved to the archive tables by HistoryArchiver")
+        .tag("table", table)
+        .register(registry);
+  }
+}
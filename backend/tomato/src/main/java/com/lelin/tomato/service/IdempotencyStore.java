@@ -0,0 +1,101 @@
+package com.lelin.tomato.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Recent results of mutations sent with an Idempotency-Key header, per user. A retry
+ * with the same key gets the first result back instead of running again; one that
+ * arrives while the first is still running waits for it. Reusing a key for a
+ * different request body is refused. Failures are not remembered, so a retry after
+ * an error runs for real.
+ *
+ * Bounded and TTL-evicting (Caffeine), and per node: a client's retries are expected
+ * within minutes, well inside the TTL.
+ */
+@Component
+public class IdempotencyStore {
+
+  public static final int MAX_KEY_LENGTH = 255;
+
+  public record Outcome<T>(T value, boolean replayed) {
+  }
+
+  private record Key(Long userId, String key) {
+  }
+
+  private record Entry(String fingerprint, CompletableFuture<Object> result) {
+  }
+
+  private final ObjectMapper objectMapper;
+  private final Cache<Key, Entry> results;
+  private final Counter replayed;
+
+  public IdempotencyStore(ObjectMapper objectMapper, MeterRegistry registry,
+      @Value("${app.idempotency.max-keys:100000}") long maxKeys,
+      @Value("${app.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+    this.objectMapper = objectMapper;
+    this.results = Caffeine.newBuilder()
+        .maximumSize(maxKeys)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .build();
+    this.replayed = Counter.builder("http.idempotency.replayed")
+        .description("Requests answered from the idempotency store instead of running again")
+        .register(registry);
+  }
+
+  // request is the body as received, before anything mutates it
+  @SuppressWarnings("unchecked")
+  public <T> Outcome<T> execute(Long userId, String key, Object request, Supplier<T> action) {
+    if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+      throw new RuntimeException("Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters");
+    }
+    Key k = new Key(userId, key);
+    Entry mine = new Entry(fingerprint(request), new CompletableFuture<>());
+    Entry first = results.asMap().putIfAbsent(k, mine);
+
+    if (first != null) {
+      if (!first.fingerprint().equals(mine.fingerprint())) {
+        throw new RuntimeException("Idempotency-Key was already used for a different request");
+      }
+      try {
+        T value = (T) first.result().join();
+        replayed.increment();
+        return new Outcome<>(value, true);
+      } catch (CompletionException e) {
+        // the first attempt failed while we waited; it's on the client to retry
+        throw e.getCause() instanceof RuntimeException re ? re : e;
+      }
+    }
+
+    try {
+      T value = action.get();
+      mine.result().complete(value);
+      return new Outcome<>(value, false);
+    } catch (RuntimeException e) {
+      results.asMap().remove(k, mine);
+      mine.result().completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  private String fingerprint(Object request) {
+    try {
+      return DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(request));
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Request body can't be fingerprinted", e);
+    }
+  }
+}
@@ -1,50 +1,176 @@
 package com.lelin.tomato.service;
 
+import com.lelin.tomato.dto.ExpiryCandidate;
+import com.lelin.tomato.dto.GardenEvent;
 import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.ArchivedPunishmentRepository;
 import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.UserRepository;
 import com.lelin.tomato.model.PunishmentType;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
+@Timed("app.service")
 @RequiredArgsConstructor
 public class PunishmentService {
 
   private final PunishmentRepository punishmentRepo;
+  private final ArchivedPunishmentRepository archivedPunishmentRepo;
+  private final UserRepository userRepo;
+  private final JdbcTemplate jdbcTemplate;
+  private final ApplicationEventPublisher events;
+  private final SyncService syncService;
 
+  @Transactional
   public Punishment createPunishmentForUser(Long userId, Long taskId) {
     Punishment p = Punishment.builder()
         .userId(userId)
         .taskId(taskId)
-        .type(randomType())
+        .type(PunishmentType.random())
         .createdAt(LocalDateTime.now())
         .resolved(false)
+        .changeVersion(syncService.version(userId))
         .build();
-    return punishmentRepo.save(p);
+    Punishment saved = punishmentRepo.save(p);
+    userRepo.addActivePunishments(userId, 1, User.MAX_INFESTATION_LEVEL);
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.PUNISHMENT_CREATED, saved));
+    return saved;
   }
 
-  private PunishmentType randomType() {
-    PunishmentType[] types = PunishmentType.values();
-    return types[(int)(Math.random() * types.length)];
+  // Bulk path for the scheduler. Punishment ids are IDENTITY, which stops Hibernate
+  // from batching inserts, so this goes through a plain JDBC batch instead
+  // (collapsed into multi-row INSERTs when rewriteBatchedStatements is on).
+  public void createPunishmentsForTasks(List<ExpiryCandidate> tasks) {
+    LocalDateTime now = LocalDateTime.now();
+    Map<Long, Long> versions = syncService.versions(
+        tasks.stream().map(ExpiryCandidate::userId).toList());
+    // built up front so the events carry the same types as the rows (ids stay null)
+    List<Punishment> punishments = new ArrayList<>(tasks.size());
+    for (ExpiryCandidate task : tasks) {
+      punishments.add(Punishment.builder()
+          .userId(task.userId())
+          .taskId(task.id())
+          .type(PunishmentType.random())
+          .createdAt(now)
+          .resolved(false)
+          .changeVersion(versions.get(task.userId()))
+          .build());
+    }
+
+    Timestamp createdAt = Timestamp.valueOf(now);
+    jdbcTemplate.batchUpdate(
+        "insert into punishments (user_id, task_id, created_at, type, resolved, change_version, version) "
+            + "values (?, ?, ?, ?, false, ?, 0)",
+        punishments,
+        punishments.size(),
+        (ps, p) -> {
+          ps.setLong(1, p.getUserId());
+          ps.setLong(2, p.getTaskId());
+          ps.setTimestamp(3, createdAt);
+          ps.setString(4, p.getType().name());
+          ps.setLong(5, p.getChangeVersion());
+        });
+
+    // one counter bump per affected user, also batched
+    Map<Long, Long> perUser = tasks.stream()
+        .collect(Collectors.groupingBy(ExpiryCandidate::userId, Collectors.counting()));
+    jdbcTemplate.batchUpdate(
+        "update users set "
+            + "infestation_level = least(greatest(active_punishment_count + ?, 0), ?), "
+            + "active_punishment_count = greatest(active_punishment_count + ?, 0) "
+            + "where id = ?",
+        perUser.entrySet(),
+        perUser.size(),
+        (ps, e) -> {
+          ps.setLong(1, e.getValue());
+          ps.setInt(2, User.MAX_INFESTATION_LEVEL);
+          ps.setLong(3, e.getValue());
+          ps.setLong(4, e.getKey());
+        });
+
+    for (Punishment p : punishments) {
+      events.publishEvent(new GardenEvent(p.getUserId(), GardenEvent.Type.PUNISHMENT_CREATED, p));
+    }
   }
 
+  @Transactional
   public Punishment resolveOldestPunishment(Long userId, Long newTaskId) {
     return punishmentRepo.findFirstByUserIdAndResolvedFalseOrderByCreatedAtAsc(userId)
         .map(p -> {
           p.setResolved(true);
           p.setResolvedByTaskId(newTaskId);
-          return punishmentRepo.save(p);
+          p.setResolvedAt(LocalDateTime.now());
+          p.setChangeVersion(syncService.version(userId));
+          Punishment saved = punishmentRepo.save(p);
+          userRepo.addActivePunishments(userId, -1, User.MAX_INFESTATION_LEVEL);
+          events.publishEvent(new GardenEvent(userId, GardenEvent.Type.PUNISHMENT_RESOLVED, saved));
+          return saved;
         })
         .orElse(null); // no punishments to resolve
   }
 
-  public List<Punishment> getAllForUser(Long userId) {
-    return punishmentRepo.findByUserId(userId);
+  // Batch form of resolveOldestPunishment: the i-th oldest open punishment is resolved
+  // by taskIds[i], for as many as there are. Returns the resolved ones in that order.
+  @Transactional
+  public List<Punishment> resolveOldestPunishments(Long userId, List<Long> taskIds) {
+    if (taskIds.isEmpty()) {
+      return List.of();
+    }
+    List<Punishment> oldest = punishmentRepo.findByUserIdAndResolvedFalseOrderByCreatedAtAsc(
+        userId, PageRequest.of(0, taskIds.size()));
+    long version = oldest.isEmpty() ? 0 : syncService.version(userId);
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < oldest.size(); i++) {
+      oldest.get(i).setResolved(true);
+      oldest.get(i).setResolvedAt(now);
+      oldest.get(i).setChangeVersion(version);
+      oldest.get(i).setResolvedByTaskId(taskIds.get(i));
+    }
+    if (!oldest.isEmpty()) {
+      punishmentRepo.saveAll(oldest);
+      userRepo.addActivePunishments(userId, -oldest.size(), User.MAX_INFESTATION_LEVEL);
+      for (Punishment p : oldest) {
+        events.publishEvent(new GardenEvent(userId, GardenEvent.Type.PUNISHMENT_RESOLVED, p));
+      }
+    }
+    return oldest;
+  }
+
+  // includeArchived: also the resolved ones HistoryArchiver has moved out
+  @Transactional(readOnly = true)
+  public List<Punishment> getAllForUser(Long userId, boolean includeArchived) {
+    List<Punishment> live = punishmentRepo.findByUserId(userId);
+    if (!includeArchived) {
+      return live;
+    }
+    List<Punishment> all = new ArrayList<>(live);
+    archivedPunishmentRepo.findByUserId(userId).forEach(a -> all.add(a.toPunishment()));
+    all.sort(Comparator.comparing(Punishment::getId));
+    return all;
+  }
+
+  // O(1): reads the counter on the user row
+  @Transactional(readOnly = true)
+  public int getActiveCount(Long userId) {
+    return userRepo.findActivePunishmentCount(userId).orElse(0);
   }
 
+  @Transactional(readOnly = true)
   public List<Punishment> getActiveForUser(Long userId) {
     return punishmentRepo.findByUserIdAndResolvedFalseOrderByCreatedAtAsc(userId);
   }
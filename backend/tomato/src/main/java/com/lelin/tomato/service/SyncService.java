@@ -0,0 +1,160 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.config.ReadYourWrites;
+import com.lelin.tomato.dto.SyncChanges;
+import com.lelin.tomato.dto.UserVersion;
+import com.lelin.tomato.model.SyncTombstone;
+import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.SyncTombstoneRepository;
+import com.lelin.tomato.repository.TaskRepository;
+import com.lelin.tomato.repository.TomatoRepository;
+import com.lelin.tomato.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Delta sync for offline clients. Every task, punishment and tomato row carries the
+ * change version of its owner at its last write, and deletes leave a tombstone, so
+ * GET /sync?since= reads only rows newer than the client's copy.
+ *
+ * A write transaction takes one version per user, by bumping users.change_version.
+ * The bump holds that user's row lock until commit, so a user's writers commit in
+ * version order and a reader can never see version n+1 before n.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SyncService {
+
+  // per-transaction map of userId -> version already taken
+  private static final Object TX_VERSIONS = new Object();
+
+  private final UserRepository userRepo;
+  private final TaskRepository taskRepo;
+  private final PunishmentRepository punishmentRepo;
+  private final TomatoRepository tomatoRepo;
+  private final SyncTombstoneRepository tombstoneRepo;
+  private final JdbcTemplate jdbcTemplate;
+  private final ReadYourWrites readYourWrites;
+
+  @Value("${app.sync.tombstone-retention-days:30}")
+  private int tombstoneRetentionDays;
+
+  // The version to stamp on this user's rows in the current transaction
+  @Transactional(propagation = Propagation.MANDATORY)
+  public long version(Long userId) {
+    return versions(List.of(userId)).get(userId);
+  }
+
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Map<Long, Long> versions(Collection<Long> userIds) {
+    Map<Long, Long> taken = takenInThisTransaction();
+    Set<Long> missing = userIds.stream()
+        .filter(id -> !taken.containsKey(id))
+        .collect(Collectors.toSet());
+    if (!missing.isEmpty()) {
+      userRepo.bumpChangeVersions(missing);
+      for (UserVersion v : userRepo.findChangeVersions(missing)) {
+        taken.put(v.userId(), v.version());
+      }
+      // rows whose owner is gone have nobody to sync them
+      missing.forEach(id -> taken.putIfAbsent(id, 0L));
+    }
+    return userIds.stream().distinct().collect(Collectors.toMap(id -> id, taken::get));
+  }
+
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void recordDeleted(Long userId, SyncTombstone.Type type, Collection<Long> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    long version = version(userId);
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    // IDENTITY ids, so a JDBC batch as for punishments and tomatoes
+    jdbcTemplate.batchUpdate(
+        "insert into sync_tombstones (user_id, entity_type, entity_id, change_version, deleted_at) "
+            + "values (?, ?, ?, ?, ?)",
+        ids,
+        ids.size(),
+        (ps, id) -> {
+          ps.setLong(1, userId);
+          ps.setString(2, type.name());
+          ps.setLong(3, id);
+          ps.setLong(4, version);
+          ps.setTimestamp(5, now);
+        });
+  }
+
+  // since == null: first sync, everything. The user's version is read first, so a
+  // writer committing meanwhile has a higher one and is picked up (again) next time.
+  @Transactional(readOnly = true)
+  public SyncChanges getChanges(Long userId, Long since) {
+    UserVersion state = userRepo.findSyncState(userId)
+        .orElseThrow(() -> new RuntimeException("User not found"));
+
+    boolean resync = since == null || since < state.syncFloor() || since > state.version();
+    if (!resync && since == state.version()) {
+      return new SyncChanges(since, false, List.of(), List.of(), List.of(), List.of());
+    }
+    // rows written before versions existed sit at 0
+    long after = resync ? -1 : since;
+    return new SyncChanges(state.version(), resync,
+        taskRepo.findChangedSince(userId, after),
+        punishmentRepo.findChangedSince(userId, after),
+        tomatoRepo.findChangedSince(userId, after),
+        resync ? List.of() : tombstoneRepo.findDeletedSince(userId, after));
+  }
+
+  @Scheduled(initialDelayString = "${app.sync.prune-initial-delay-ms:120000}",
+      fixedDelayString = "${app.sync.prune-ms:86400000}") // daily
+  @Transactional
+  public void pruneTombstones() {
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(tombstoneRetentionDays);
+    // raise the floors first: a client behind a pruned tombstone must resync
+    userRepo.raiseSyncFloors(cutoff);
+    int pruned = tombstoneRepo.deleteOlderThan(cutoff);
+    if (pruned > 0) {
+      log.info("Pruned {} sync tombstones older than {} days", pruned, tombstoneRetentionDays);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<Long, Long> takenInThisTransaction() {
+    Map<Long, Long> taken = (Map<Long, Long>) TransactionSynchronizationManager.getResource(TX_VERSIONS);
+    if (taken == null) {
+      taken = new HashMap<>();
+      TransactionSynchronizationManager.bindResource(TX_VERSIONS, taken);
+      Map<Long, Long> bound = taken;
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          // their next reads stay on the primary for a while
+          readYourWrites.wrote(bound.keySet());
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(TX_VERSIONS);
+        }
+      });
+    }
+    return taken;
+  }
+}
@@ -0,0 +1,133 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.model.Task;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of upcoming time bomb deadlines, ordered by dueTime.
+ * A single ticker thread pops whatever is due, so tasks expire within one
+ * tick of their deadline without scanning the tasks table. Only deadlines
+ * inside the horizon are held; TimeBombScheduler refills the rest as they
+ * come into range and also catches anything this index missed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskDeadlineIndex {
+
+  private final TaskExpiryService expiryService;
+
+  @Value("${app.scheduler.deadline-index.tick-ms:500}")
+  private long tickMs;
+
+  @Value("${app.scheduler.deadline-index.horizon-minutes:60}")
+  private long horizonMinutes;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  private final ConcurrentSkipListSet<Deadline> queue = new ConcurrentSkipListSet<>();
+  private final ConcurrentHashMap<Long, Deadline> byTask = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService ticker;
+
+  record Deadline(LocalDateTime dueTime, Long taskId, Long userId) implements Comparable<Deadline> {
+
+    private static final Comparator<Deadline> ORDER = Comparator
+        .comparing(Deadline::dueTime)
+        .thenComparing(Deadline::taskId);
+
+    @Override
+    public int compareTo(Deadline other) {
+      return ORDER.compare(this, other);
+    }
+  }
+
+  @PostConstruct
+  void start() {
+    ThreadFactory threads = virtualThreads
+        ? Thread.ofVirtual().name("deadline-index").factory()
+        : Thread.ofPlatform().name("deadline-index").daemon().factory();
+    ticker = Executors.newSingleThreadScheduledExecutor(threads);
+    ticker.scheduleWithFixedDelay(this::fireDue, tickMs, tickMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    ticker.shutdownNow();
+  }
+
+  // (Re)schedules a task, or drops it if it no longer has a live deadline
+  public void track(Task task) {
+    if (task.getId() == null) return;
+
+    if (!task.isTimeBombEnabled() || task.isCompleted() || task.isExpired()
+        || task.getDueTime() == null
+        || task.getDueTime().isAfter(LocalDateTime.now().plusMinutes(horizonMinutes))) {
+      cancel(task.getId());
+      return;
+    }
+
+    Deadline deadline = new Deadline(task.getDueTime(), task.getId(), task.getUserId());
+    Deadline previous = byTask.put(task.getId(), deadline);
+    if (previous != null) {
+      queue.remove(previous);
+    }
+    queue.add(deadline);
+  }
+
+  public void trackAll(Iterable<Task> tasks) {
+    tasks.forEach(this::track);
+  }
+
+  public void cancel(Long taskId) {
+    Deadline previous = byTask.remove(taskId);
+    if (previous != null) {
+      queue.remove(previous);
+    }
+  }
+
+  public LocalDateTime horizon(LocalDateTime now) {
+    return now.plusMinutes(horizonMinutes);
+  }
+
+  public int size() {
+    return byTask.size();
+  }
+
+  void fireDue() {
+    LocalDateTime now = LocalDateTime.now();
+
+    Deadline next;
+    while ((next = queue.pollFirst()) != null) {
+      if (next.dueTime().isAfter(now)) {
+        queue.add(next);
+        break;
+      }
+
+      // stale entries (task rescheduled or cancelled meanwhile) are simply dropped
+      if (!byTask.remove(next.taskId(), next)) continue;
+
+      try {
+        expiryService.expire(next.taskId(), next.userId(), next.dueTime());
+      } catch (Exception e) {
+        // the reconciliation poll will retry it
+        log.warn("Failed to expire task {}", next.taskId(), e);
+      }
+    }
+  }
+}
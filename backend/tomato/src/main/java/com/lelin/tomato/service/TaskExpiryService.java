@@ -0,0 +1,103 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.ExpiryCandidate;
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.repository.TaskRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class TaskExpiryService {
+
+  private final TaskRepository taskRepo;
+  private final PunishmentService punishmentService;
+  private final ApplicationEventPublisher events;
+  private final MeterRegistry meterRegistry;
+  private final SyncService syncService;
+
+  // Only the caller that actually flips expired creates the punishment,
+  // so a task is punished at most once even if several nodes race on it.
+  @Transactional
+  public boolean expire(Long taskId, Long userId, LocalDateTime dueTime) {
+    LocalDateTime now = LocalDateTime.now();
+    // taken before the flip; if another node wins, the bump is harmless
+    if (taskRepo.markExpired(taskId, now, syncService.version(userId)) == 0) {
+      return false;
+    }
+    recordLag(lagTimer("index"), dueTime, now);
+
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_EXPIRED, Map.of("taskId", taskId)));
+    punishmentService.createPunishmentForUser(userId, taskId);
+    return true;
+  }
+
+  public record Chunk(int scanned, Long lastId, int expired) {
+  }
+
+  // Set-based expiry of one bounded chunk: find the next chunkSize overdue rows after
+  // afterId, flip them with a single UPDATE and batch-insert their punishments.
+  // Locks the owners' user rows before the task rows, the same order as every other
+  // writer, so it can't deadlock against a completeTask or an archive batch.
+  // Returns how far it got so the caller can continue from lastId.
+  @Transactional
+  public Chunk expireChunk(LocalDateTime now, Long afterId,
+      int partitions, Collection<Integer> owned, int chunkSize) {
+    List<ExpiryCandidate> found = taskRepo.findExpiryChunk(
+        now, afterId, partitions, owned, PageRequest.of(0, chunkSize));
+    if (found.isEmpty()) {
+      return new Chunk(0, afterId, 0);
+    }
+    Long lastId = found.get(found.size() - 1).id();
+
+    // user rows first, sorted; bumped even for owners whose rows drop out below,
+    // a version with no changes in it is harmless
+    syncService.versions(found.stream().map(ExpiryCandidate::userId)
+        .collect(Collectors.toCollection(TreeSet::new)));
+    List<ExpiryCandidate> chunk = taskRepo.lockExpiring(
+        found.stream().map(ExpiryCandidate::id).toList(), now);
+    if (chunk.isEmpty()) {
+      return new Chunk(found.size(), lastId, 0);
+    }
+
+    taskRepo.markExpiredAll(chunk.stream().map(ExpiryCandidate::id).toList());
+    Timer lag = lagTimer("poll");
+    LocalDateTime flippedAt = LocalDateTime.now();
+    for (ExpiryCandidate task : chunk) {
+      recordLag(lag, task.dueTime(), flippedAt);
+      events.publishEvent(new GardenEvent(task.userId(), GardenEvent.Type.TASK_EXPIRED,
+          Map.of("taskId", task.id())));
+    }
+    punishmentService.createPunishmentsForTasks(chunk);
+    return new Chunk(found.size(), lastId, chunk.size());
+  }
+
+  // How long after its dueTime a task actually expired. "index" is the
+  // TaskDeadlineIndex fast path, "poll" the TimeBombScheduler safety net.
+  private Timer lagTimer(String path) {
+    return Timer.builder("tasks.expiry.lag")
+        .description("Time from a task's dueTime to its expiry")
+        .tag("path", path)
+        .register(meterRegistry);
+  }
+
+  private static void recordLag(Timer timer, LocalDateTime dueTime, LocalDateTime expiredAt) {
+    if (dueTime != null) {
+      timer.record(Duration.between(dueTime, expiredAt).isNegative()
+          ? Duration.ZERO : Duration.between(dueTime, expiredAt));
+    }
+  }
+}
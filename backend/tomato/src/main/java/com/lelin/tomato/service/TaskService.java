@@ -1,40 +1,152 @@
 package com.lelin.tomato.service;
 
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.TaskBatchResult;
+import com.lelin.tomato.dto.TaskCursor;
+import com.lelin.tomato.dto.TaskFilter;
+import com.lelin.tomato.dto.TaskPage;
+import com.lelin.tomato.model.ArchivedTask;
+import com.lelin.tomato.model.Priority;
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.SyncTombstone;
 import com.lelin.tomato.model.Task;
+import com.lelin.tomato.repository.ArchivedTaskRepository;
 import com.lelin.tomato.repository.TaskRepository;
 import java.util.Objects;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
+@Timed("app.service")
 @RequiredArgsConstructor
 public class TaskService {
 
+  public static final int MAX_PAGE_SIZE = 200;
+
+  // lower bound for the first DUE page when no dueFrom is given (MySQL DATETIME minimum)
+  private static final LocalDateTime EARLIEST_DUE = LocalDateTime.of(1000, 1, 1, 0, 0);
+
+  // the orders of findPageNewest and findPageByDue
+  private static final Comparator<Task> NEWEST_FIRST = Comparator.comparing(Task::getId).reversed();
+  private static final Comparator<Task> BY_DUE = Comparator.comparing(Task::getDueTime).thenComparing(Task::getId);
+
   private final TaskRepository taskRepository;
+  private final ArchivedTaskRepository archivedTaskRepository;
   private final PunishmentService punishmentService;
   private final TomatoService tomatoService;
+  private final TaskDeadlineIndex deadlineIndex;
+  private final ApplicationEventPublisher events;
+  private final JdbcTemplate jdbcTemplate;
+  private final SyncService syncService;
+  private final ConflictRetry conflictRetry;
+
+  // items per /tasks/batch request
+  @Value("${app.tasks.batch-max-size:100}")
+  private int batchMaxSize;
 
+  @Transactional
   public Task createTask(Task task, Long userId) {
     task.setUserId(userId);
     task.setCreatedAt(LocalDateTime.now());
     task.setCompleted(false);
     task.setExpired(false);
+    task.setChangeVersion(syncService.version(userId));
 
     // If dueTime is null, timeBomber should not trigger
     task.setTimeBombEnabled(task.getDueTime() != null);
 
-    return taskRepository.save(task);
+    Task saved = taskRepository.save(task);
+    deadlineIndex.track(saved);
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_CREATED, saved));
+    return saved;
+  }
+
+  @Transactional(readOnly = true)
+  public List<Task> getOpenTasks(Long userId) {
+    return taskRepository.findByUserIdAndCompletedFalse(userId);
+  }
+
+  @Transactional(readOnly = true)
+  public TaskPage getTaskPage(Long userId, TaskFilter filter, String cursor, int limit) {
+    int size = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+    TaskFilter.Sort sort = filter.getSort();
+    TaskCursor after = cursor == null || cursor.isBlank() ? null : TaskCursor.decode(cursor, sort);
+
+    // one extra row tells us whether there is a next page
+    PageRequest page = PageRequest.of(0, size + 1);
+    List<Task> rows;
+    if (sort == TaskFilter.Sort.DUE) {
+      LocalDateTime afterDue = after != null ? after.dueTime()
+          : filter.getDueFrom() != null ? filter.getDueFrom() : EARLIEST_DUE;
+      Long afterId = after != null ? after.id() : 0L;
+      rows = taskRepository.findPageByDue(userId, afterDue, afterId,
+          filter.getCompleted(), filter.getExpired(), filter.getPriority(),
+          filter.getDueFrom(), filter.getDueTo(), page);
+      if (filter.isIncludeArchived()) {
+        rows = merge(rows, archivedTaskRepository.findPageByDue(userId, afterDue, afterId,
+            filter.getCompleted(), filter.getExpired(), filter.getPriority(),
+            filter.getDueFrom(), filter.getDueTo(), page), BY_DUE, size + 1);
+      }
+    } else {
+      Long beforeId = after != null ? after.id() : Long.MAX_VALUE;
+      rows = taskRepository.findPageNewest(userId, beforeId,
+          filter.getCompleted(), filter.getExpired(), filter.getPriority(),
+          filter.getDueFrom(), filter.getDueTo(), page);
+      if (filter.isIncludeArchived()) {
+        rows = merge(rows, archivedTaskRepository.findPageNewest(userId, beforeId,
+            filter.getCompleted(), filter.getExpired(), filter.getPriority(),
+            filter.getDueFrom(), filter.getDueTo(), page), NEWEST_FIRST, size + 1);
+      }
+    }
+
+    if (rows.size() <= size) {
+      return new TaskPage(rows, null);
+    }
+    List<Task> items = rows.subList(0, size);
+    return new TaskPage(items, TaskCursor.after(items.get(size - 1), sort).encode());
   }
 
-  public List<Task> getTasks(Long userId) {
-    return taskRepository.findByUserId(userId);
+  // Archived rows keep their ids, so both tables page on the same key and one cursor
+  // covers both: the first n of the two sorted pages are the first n overall.
+  private static List<Task> merge(List<Task> live, List<ArchivedTask> archived,
+      Comparator<Task> order, int n) {
+    if (archived.isEmpty()) {
+      return live;
+    }
+    List<Task> all = new ArrayList<>(live);
+    archived.forEach(a -> all.add(a.toTask()));
+    all.sort(order);
+    return all.size() <= n ? all : all.subList(0, n);
   }
 
   public Task updateTask(Long id, Task updatedTask, Long userId) {
+    return conflictRetry.inTransaction(() -> applyUpdate(id, updatedTask, userId));
+  }
+
+  private Task applyUpdate(Long id, Task updatedTask, Long userId) {
     Task task = taskRepository.findById(id)
         .orElseThrow(() -> new RuntimeException("Task not found"));
 
@@ -49,12 +161,19 @@ public class TaskService {
 
     // Auto-set if timeBombEnabled should be turned on/off
     task.setTimeBombEnabled(updatedTask.getDueTime() != null);
+    task.setChangeVersion(syncService.version(userId));
 
-    return taskRepository.save(task);
+    Task saved = taskRepository.save(task);
+    deadlineIndex.track(saved);
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_UPDATED, saved));
+    return saved;
   }
 
-  @Transactional
   public void deleteTask(Long id, Long userId) {
+    conflictRetry.runInTransaction(() -> applyDelete(id, userId));
+  }
+
+  private void applyDelete(Long id, Long userId) {
     Task task = taskRepository.findById(id)
         .orElseThrow(() -> new RuntimeException("Task not found"));
 
@@ -67,10 +186,19 @@ public class TaskService {
     }
 
     taskRepository.delete(task);
+    syncService.recordDeleted(userId, SyncTombstone.Type.TASK, List.of(task.getId()));
+    deadlineIndex.cancel(task.getId());
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_DELETED,
+        Map.of("taskId", task.getId())));
   }
 
-  @Transactional
+  // Two devices completing the same task both read it as open; the loser's write fails
+  // its @Version check and is re-run, finds it completed and changes nothing.
   public Task completeTask(Long taskId, Long userId) {
+    return conflictRetry.inTransaction(() -> applyComplete(taskId, userId));
+  }
+
+  private Task applyComplete(Long taskId, Long userId) {
     Task task = taskRepository.findById(taskId)
         .orElseThrow(() -> new RuntimeException("Task not found"));
 
@@ -82,6 +210,9 @@ public class TaskService {
 
     task.setCompleted(true);
     task.setCompletedAt(LocalDateTime.now());
+    task.setChangeVersion(syncService.version(userId));
+    deadlineIndex.cancel(taskId);
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_COMPLETED, task));
 
     if (task.isExpired()) {
       task.setTomatoesEarned(1);
@@ -103,6 +234,198 @@ public class TaskService {
     tomatoService.addTomato(userId, taskId);
     return task;
   }
-}
 
+  // ---------- batch endpoints: one transaction and one outcome per item ----------
+
+  @Transactional
+  public TaskBatchResult createTasks(List<Task> tasks, Long userId) {
+    checkBatchSize(tasks.size());
+    LocalDateTime now = LocalDateTime.now();
+    long version = syncService.version(userId);
+
+    TaskBatchResult.Item[] items = new TaskBatchResult.Item[tasks.size()];
+    List<Task> valid = new ArrayList<>();
+    List<Integer> validIndexes = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      Task task = tasks.get(i);
+      if (task == null || task.getTitle() == null || task.getTitle().isBlank()) {
+        items[i] = TaskBatchResult.Item.invalid(i, "Title must not be blank");
+        continue;
+      }
+      // same defaults as createTask
+      task.setId(null);
+      task.setUserId(userId);
+      task.setCreatedAt(now);
+      task.setCompleted(false);
+      task.setCompletedAt(null);
+      task.setExpired(false);
+      task.setTomatoesEarned(0);
+      task.setTimeBombEnabled(task.getDueTime() != null);
+      task.setChangeVersion(version);
+      if (task.getPriority() == null) {
+        task.setPriority(Priority.MEDIUM);
+      }
+      valid.add(task);
+      validIndexes.add(i);
+    }
+
+    insertAll(valid);
+    for (int v = 0; v < valid.size(); v++) {
+      Task saved = valid.get(v);
+      int i = validIndexes.get(v);
+      items[i] = TaskBatchResult.Item.of(i, saved.getId(), TaskBatchResult.Status.CREATED, saved);
+      deadlineIndex.track(saved);
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_CREATED, saved));
+    }
+    return new TaskBatchResult(List.of(items));
+  }
 
+  // Same rules as completeTask, applied to every item in request order: an expired task
+  // earns a tomato, a fresh one pays off the oldest open punishment if there is one and
+  // earns a tomato otherwise. Task updates are flushed as one JDBC batch at commit
+  // (hibernate.jdbc.batch_size); tomatoes and punishments go through their batch paths.
+  // Retried as a whole on a write conflict, like completeTask.
+  public TaskBatchResult completeTasks(List<Long> ids, Long userId) {
+    checkBatchSize(ids.size());
+    return conflictRetry.inTransaction(() -> applyCompleteAll(ids, userId));
+  }
+
+  private TaskBatchResult applyCompleteAll(List<Long> ids, Long userId) {
+    Map<Long, Task> owned = findOwned(ids, userId);
+    LocalDateTime now = LocalDateTime.now();
+    long version = syncService.version(userId);
+
+    List<TaskBatchResult.Item> items = new ArrayList<>(ids.size());
+    List<Long> expiredIds = new ArrayList<>();
+    List<Task> fresh = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      Task task = owned.get(ids.get(i));
+      if (task == null) {
+        items.add(TaskBatchResult.Item.of(i, ids.get(i), TaskBatchResult.Status.NOT_FOUND, null));
+        continue;
+      }
+      // also catches the same id twice in one request
+      if (task.isCompleted()) {
+        items.add(TaskBatchResult.Item.of(i, task.getId(), TaskBatchResult.Status.ALREADY_COMPLETED, task));
+        continue;
+      }
+
+      task.setCompleted(true);
+      task.setCompletedAt(now);
+      task.setTomatoesEarned(1);
+      task.setChangeVersion(version);
+      deadlineIndex.cancel(task.getId());
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_COMPLETED, task));
+      if (task.isExpired()) {
+        expiredIds.add(task.getId());
+      } else {
+        fresh.add(task);
+      }
+      items.add(TaskBatchResult.Item.of(i, task.getId(), TaskBatchResult.Status.COMPLETED, task));
+    }
+
+    List<Punishment> resolved = punishmentService.resolveOldestPunishments(userId,
+        fresh.stream().map(Task::getId).toList());
+    List<Long> tomatoTaskIds = new ArrayList<>(expiredIds);
+    for (int f = 0; f < fresh.size(); f++) {
+      if (f < resolved.size()) {
+        fresh.get(f).setTomatoesEarned(0);
+      } else {
+        tomatoTaskIds.add(fresh.get(f).getId());
+      }
+    }
+    tomatoService.addTomatoes(userId, tomatoTaskIds);
+    return new TaskBatchResult(items);
+  }
+
+  @Transactional
+  public TaskBatchResult deleteTasks(List<Long> ids, Long userId) {
+    checkBatchSize(ids.size());
+    Map<Long, Task> owned = findOwned(ids, userId);
+
+    List<TaskBatchResult.Item> items = new ArrayList<>(ids.size());
+    Set<Long> deleted = new HashSet<>();
+    List<Long> withTomatoes = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      Task task = owned.get(ids.get(i));
+      // a repeated id was already deleted by its first occurrence
+      if (task == null || !deleted.add(task.getId())) {
+        items.add(TaskBatchResult.Item.of(i, ids.get(i), TaskBatchResult.Status.NOT_FOUND, null));
+        continue;
+      }
+      if (task.isCompleted() && task.getTomatoesEarned() > 0) {
+        withTomatoes.add(task.getId());
+      }
+      items.add(TaskBatchResult.Item.of(i, task.getId(), TaskBatchResult.Status.DELETED, null));
+    }
+
+    tomatoService.removeTomatoesForTasks(userId, withTomatoes);
+    if (!deleted.isEmpty()) {
+      taskRepository.deleteOwned(userId, deleted);
+      syncService.recordDeleted(userId, SyncTombstone.Type.TASK, deleted);
+    }
+    for (Long id : deleted) {
+      deadlineIndex.cancel(id);
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TASK_DELETED, Map.of("taskId", id)));
+    }
+    return new TaskBatchResult(items);
+  }
+
+  private void checkBatchSize(int size) {
+    if (size > batchMaxSize) {
+      throw new RuntimeException("Batch too large (max " + batchMaxSize + " items)");
+    }
+  }
+
+  private Map<Long, Task> findOwned(List<Long> ids, Long userId) {
+    Set<Long> distinct = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+    if (distinct.isEmpty()) {
+      return Map.of();
+    }
+    return taskRepository.findOwned(userId, distinct).stream()
+        .collect(Collectors.toMap(Task::getId, Function.identity()));
+  }
+
+  // Task ids are IDENTITY, which stops Hibernate from batching inserts, so new tasks go
+  // out as one JDBC batch (multi-row INSERT with rewriteBatchedStatements) and get their
+  // generated ids back in order.
+  private void insertAll(List<Task> tasks) {
+    if (tasks.isEmpty()) {
+      return;
+    }
+    GeneratedKeyHolder keys = new GeneratedKeyHolder();
+    jdbcTemplate.batchUpdate(
+        con -> con.prepareStatement("insert into tasks (title, description, priority, created_at, "
+            + "due_time, completed_at, expired, time_bomb_enabled, completed, user_id, tomatoes_earned, "
+            + "change_version, version) values (?, ?, ?, ?, ?, null, false, ?, false, ?, 0, ?, 0)", Statement.RETURN_GENERATED_KEYS),
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            Task task = tasks.get(i);
+            ps.setString(1, task.getTitle());
+            ps.setString(2, task.getDescription());
+            ps.setString(3, task.getPriority().name());
+            ps.setTimestamp(4, Timestamp.valueOf(task.getCreatedAt()));
+            if (task.getDueTime() != null) {
+              ps.setTimestamp(5, Timestamp.valueOf(task.getDueTime()));
+            } else {
+              ps.setNull(5, Types.TIMESTAMP);
+            }
+            ps.setBoolean(6, task.isTimeBombEnabled());
+            ps.setLong(7, task.getUserId());
+            ps.setLong(8, task.getChangeVersion());
+          }
+
+          @Override
+          public int getBatchSize() {
+            return tasks.size();
+          }
+        },
+        keys);
+
+    List<Map<String, Object>> generated = keys.getKeyList();
+    for (int i = 0; i < tasks.size(); i++) {
+      tasks.get(i).setId(((Number) generated.get(i).values().iterator().next()).longValue());
+    }
+  }
+}
@@ -1,33 +1,95 @@
 package com.lelin.tomato.service;
 
-import com.lelin.tomato.model.Task;
 import com.lelin.tomato.repository.TaskRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
+/**
+ * Tasks normally expire through TaskDeadlineIndex within a tick of their dueTime.
+ * This poll is the slow safety net behind it: it expires anything the index
+ * missed (restarts, other nodes, lost updates) and loads deadlines that have
+ * come within the index horizon.
+ */
 @Component
 @RequiredArgsConstructor
 public class TimeBombScheduler {
 
   private final TaskRepository taskRepo;
-  private final PunishmentService punishmentService;
+  private final TaskExpiryService expiryService;
+  private final ExpiryLeaseManager leaseManager;
+  private final TaskDeadlineIndex deadlineIndex;
+  private final MeterRegistry meterRegistry;
 
-  @Scheduled(fixedRate = 30000) // every 30s
+  // When several instances share one database, only scan the partitions we lease
+  @Value("${app.scheduler.cluster.enabled:false}")
+  private boolean clusterEnabled;
+
+  @Value("${app.scheduler.expiry-chunk-size:500}")
+  private int chunkSize;
+
+  // fixed delay, not rate: with virtual threads on, fixed-rate runs may overlap
+  @Scheduled(fixedDelayString = "${app.scheduler.cluster.heartbeat-ms:30000}")
+  public void renewLeases() {
+    if (!clusterEnabled) return;
+
+    Set<Integer> before = leaseManager.getOwnedPartitions();
+    Set<Integer> gained = new HashSet<>(leaseManager.refresh());
+    gained.removeAll(before);
+
+    // partitions taken over from another node are reconciled right away
+    if (!gained.isEmpty()) {
+      reconcile(gained);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${app.scheduler.reconcile-ms:300000}") // every 5 min
   public void checkExpiredTasks() {
+    if (clusterEnabled) {
+      Set<Integer> owned = leaseManager.getOwnedPartitions();
+      if (owned.isEmpty()) return;
+
+      reconcile(owned);
+    } else {
+      reconcile(null);
+    }
+  }
+
+  // partitions == null means every task (single-node mode)
+  private void reconcile(Set<Integer> partitions) {
+    int total = partitions == null ? 1 : leaseManager.getPartitions();
+    Set<Integer> owned = partitions == null ? Set.of(0) : partitions;
+
     LocalDateTime now = LocalDateTime.now();
+    Timer.Sample run = Timer.start(meterRegistry);
 
-    List<Task> toExpire = taskRepo
-        .findByTimeBombEnabledTrueAndCompletedFalseAndExpiredFalseAndDueTimeBefore(now);
+    // walk the overdue backlog in keyset-ordered chunks so memory stays flat
+    Long afterId = 0L;
+    int expired = 0;
+    TaskExpiryService.Chunk chunk;
+    do {
+      chunk = expiryService.expireChunk(now, afterId, total, owned, chunkSize);
+      afterId = chunk.lastId();
+      expired += chunk.expired();
+    } while (chunk.scanned() == chunkSize);
 
-    for (Task task : toExpire) {
-      task.setExpired(true);
-      taskRepo.save(task);
+    run.stop(Timer.builder("tasks.expiry.run.duration")
+        .description("Time to expire one reconcile run's overdue backlog")
+        .register(meterRegistry));
+    DistributionSummary.builder("tasks.expiry.run.size")
+        .description("Tasks the index missed and a reconcile run expired")
+        .register(meterRegistry)
+        .record(expired);
 
-      punishmentService.createPunishmentForUser(task.getUserId(), task.getId());
-    }
+    deadlineIndex.trackAll(
+        taskRepo.findUpcomingInPartitions(now, deadlineIndex.horizon(now), total, owned));
   }
 }
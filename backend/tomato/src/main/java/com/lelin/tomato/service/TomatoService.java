@@ -1,40 +1,222 @@
 package com.lelin.tomato.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lelin.tomato.dto.DailyCount;
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.TomatoSeries;
+import com.lelin.tomato.model.SyncTombstone;
 import com.lelin.tomato.model.Tomato;
+import com.lelin.tomato.repository.TomatoDailyRepository;
 import com.lelin.tomato.repository.TomatoRepository;
+import com.lelin.tomato.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
+@Timed("app.service")
 @RequiredArgsConstructor
 public class TomatoService {
 
+  // bounds what one series request can read from the rollup (about three years of days)
+  public static final int MAX_SERIES_DAYS = 1100;
+
   private final TomatoRepository tomatoRepo;
+  private final TomatoDailyRepository dailyRepo;
+  private final UserRepository userRepo;
+  private final EntityManager entityManager;
+  private final ObjectMapper objectMapper;
+  private final ApplicationEventPublisher events;
+  private final JdbcTemplate jdbcTemplate;
+  private final SyncService syncService;
 
+  @Transactional
   public Tomato addTomato(Long userId, Long taskId) {
     Tomato t = Tomato.builder()
         .userId(userId)
         .taskId(taskId)
         .timestamp(LocalDateTime.now())
+        .changeVersion(syncService.version(userId))
         .build();
-    return tomatoRepo.save(t);
+    Tomato saved = tomatoRepo.save(t);
+    userRepo.addTomatoes(userId, 1);
+    dailyRepo.increment(userId, saved.getTimestamp().toLocalDate(), 1);
+    events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TOMATO_EARNED, saved));
+    return saved;
+  }
+
+  // Batch form of addTomato, one tomato per task. Tomato ids are IDENTITY, which stops
+  // Hibernate from batching inserts, so this is one JDBC batch plus a single bump of
+  // the user counter and of today's rollup.
+  @Transactional
+  public void addTomatoes(Long userId, List<Long> taskIds) {
+    if (taskIds.isEmpty()) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    Timestamp timestamp = Timestamp.valueOf(now);
+    long version = syncService.version(userId);
+    jdbcTemplate.batchUpdate(
+        "insert into tomatoes (user_id, task_id, timestamp, change_version) values (?, ?, ?, ?)",
+        taskIds,
+        taskIds.size(),
+        (ps, taskId) -> {
+          ps.setLong(1, userId);
+          ps.setLong(2, taskId);
+          ps.setTimestamp(3, timestamp);
+          ps.setLong(4, version);
+        });
+    userRepo.addTomatoes(userId, taskIds.size());
+    dailyRepo.increment(userId, now.toLocalDate(), taskIds.size());
+    for (Long taskId : taskIds) {
+      // ids stay null, as for the scheduler's batched punishments
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TOMATO_EARNED,
+          Tomato.builder().userId(userId).taskId(taskId).timestamp(now).changeVersion(version).build()));
+    }
   }
 
+  // O(1): reads the counter on the user row instead of counting tomatoes
+  @Transactional(readOnly = true)
   public long getTomatoCount(Long userId) {
-    return tomatoRepo.countByUserId(userId);
+    return userRepo.findTomatoCount(userId).orElse(0L);
   }
 
+  @Transactional(readOnly = true)
   public List<Tomato> getTomatoHistory(Long userId) {
     return tomatoRepo.findByUserIdOrderByTimestampDesc(userId);
   }
 
+  // Writes the history as NDJSON (one tomato per line, newest first) and returns the row
+  // count. Memory stays flat however long the history: rows come off a streaming cursor
+  // and are detached as soon as they are written.
+  @Transactional(readOnly = true)
+  public long exportHistory(Long userId, LocalDateTime from, LocalDateTime to, Integer limit,
+      OutputStream out) throws IOException {
+    long written = 0;
+
+    try (Stream<Tomato> rows = tomatoRepo.streamHistory(userId, from, to, limit);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+      json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      Iterator<Tomato> it = rows.iterator();
+      while (it.hasNext()) {
+        Tomato t = it.next();
+        objectMapper.writeValue(json, t);
+        json.writeRaw('\n');
+        entityManager.detach(t);
+        written++;
+      }
+    }
+    return written;
+  }
+
   @Transactional
   public void removeTomatoForTask(Long userId, Long taskId) {
-    tomatoRepo.deleteByUserIdAndTaskId(userId, taskId);
+    List<DailyCount> perDay = tomatoRepo.countPerDayForTask(userId, taskId);
+    syncService.recordDeleted(userId, SyncTombstone.Type.TOMATO,
+        tomatoRepo.findIdsForTasks(userId, List.of(taskId)));
+    long removed = tomatoRepo.deleteByUserIdAndTaskId(userId, taskId);
+    if (removed > 0) {
+      userRepo.addTomatoes(userId, -removed);
+      for (DailyCount day : perDay) {
+        dailyRepo.decrement(userId, day.day(), day.tomatoes());
+      }
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TOMATO_REMOVED,
+          Map.of("taskId", taskId, "count", removed)));
+    }
+  }
+
+  // Batch form of removeTomatoForTask
+  @Transactional
+  public void removeTomatoesForTasks(Long userId, List<Long> taskIds) {
+    if (taskIds.isEmpty()) {
+      return;
+    }
+    List<DailyCount> perDay = tomatoRepo.countPerDayForTasks(userId, taskIds);
+    syncService.recordDeleted(userId, SyncTombstone.Type.TOMATO,
+        tomatoRepo.findIdsForTasks(userId, taskIds));
+    long removed = tomatoRepo.deleteForTasks(userId, taskIds);
+    if (removed > 0) {
+      userRepo.addTomatoes(userId, -removed);
+      for (DailyCount day : perDay) {
+        dailyRepo.decrement(userId, day.day(), day.tomatoes());
+      }
+      events.publishEvent(new GardenEvent(userId, GardenEvent.Type.TOMATO_REMOVED,
+          Map.of("taskIds", taskIds, "count", removed)));
+    }
+  }
+
+  // Reads only the rollup rows inside [from, to), so the cost depends on the range,
+  // never on how many tomatoes the user has. Week and month buckets widen `from`
+  // back to the start of their bucket.
+  @Transactional(readOnly = true)
+  public TomatoSeries getSeries(Long userId, TomatoSeries.Bucket bucket, LocalDate from, LocalDate to) {
+    LocalDate start = bucketStart(bucket, from);
+    if (!to.isAfter(start)) {
+      throw new RuntimeException("to must be after from");
+    }
+    if (ChronoUnit.DAYS.between(start, to) > MAX_SERIES_DAYS) {
+      throw new RuntimeException("Range too large (max " + MAX_SERIES_DAYS + " days)");
+    }
+
+    List<DailyCount> days = dailyRepo.findRange(userId, start, to);
+    List<TomatoSeries.Point> points = new ArrayList<>();
+    int next = 0;
+    for (LocalDate b = start; b.isBefore(to); b = nextBucket(bucket, b)) {
+      LocalDate end = nextBucket(bucket, b);
+      long total = 0;
+      while (next < days.size() && days.get(next).day().isBefore(end)) {
+        total += days.get(next++).tomatoes();
+      }
+      points.add(new TomatoSeries.Point(b, total));
+    }
+    return new TomatoSeries(bucket, start, to, points);
+  }
+
+  private static LocalDate bucketStart(TomatoSeries.Bucket bucket, LocalDate day) {
+    return switch (bucket) {
+      case DAY -> day;
+      case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+      case MONTH -> day.withDayOfMonth(1);
+    };
+  }
+
+  private static LocalDate nextBucket(TomatoSeries.Bucket bucket, LocalDate start) {
+    return switch (bucket) {
+      case DAY -> start.plusDays(1);
+      case WEEK -> start.plusWeeks(1);
+      case MONTH -> start.plusMonths(1);
+    };
+  }
+
+  // Rebuilds the daily rollup for a user id range if its total no longer matches
+  // the tomatoes table (rows written before the rollup existed, manual fixes).
+  // Returns whether anything was rebuilt.
+  @Transactional
+  public boolean repairRollups(long afterId, long toId) {
+    if (dailyRepo.drift(afterId, toId) == 0) {
+      return false;
+    }
+    dailyRepo.deleteRange(afterId, toId);
+    dailyRepo.rebuildRange(afterId, toId);
+    return true;
   }
 }
@@ -2,31 +2,58 @@ package com.lelin.tomato;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lelin.tomato.config.ReplicaLagMonitor;
+import com.lelin.tomato.dto.GardenLedgerState;
+import com.lelin.tomato.model.ArchivedTask;
 import com.lelin.tomato.model.Punishment;
 import com.lelin.tomato.model.PunishmentType;
 import com.lelin.tomato.model.Task;
+import com.lelin.tomato.model.Tomato;
 import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.ArchivedPunishmentRepository;
+import com.lelin.tomato.repository.ArchivedTaskRepository;
+import com.lelin.tomato.repository.GardenLedgerSnapshotRepository;
 import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.SyncTombstoneRepository;
 import com.lelin.tomato.repository.TaskRepository;
+import com.lelin.tomato.repository.TomatoDailyRepository;
 import com.lelin.tomato.repository.TomatoRepository;
 import com.lelin.tomato.repository.UserRepository;
+import com.lelin.tomato.service.GardenCounterReconciler;
+import com.lelin.tomato.service.GardenLedger;
+import com.lelin.tomato.service.GardenLedgerReplay;
+import com.lelin.tomato.service.HistoryArchiver;
+import com.lelin.tomato.service.SyncService;
+import com.lelin.tomato.service.TaskService;
+import com.lelin.tomato.service.TimeBombScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.MySQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -35,6 +62,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @Testcontainers
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability
 @ActiveProfiles("test")
 class ApiIntegrationTest {
 
@@ -49,6 +77,14 @@ class ApiIntegrationTest {
     registry.add("spring.datasource.url", mysql::getJdbcUrl);
     registry.add("spring.datasource.username", mysql::getUsername);
     registry.add("spring.datasource.password", mysql::getPassword);
+    // every test registers and logs in from 127.0.0.1
+    registry.add("app.ratelimit.auth.burst", () -> "1000");
+    registry.add("app.ledger.snapshot-every", () -> "3");
+    registry.add("app.archive.batch-size", () -> "2");
+    registry.add("app.archive.pause-ms", () -> "0");
+    // read replica mode, with the replica pool on the same database
+    registry.add("app.datasource.replica.url", mysql::getJdbcUrl);
+    registry.add("app.datasource.replica.sticky-ms", () -> "300");
   }
 
   @Autowired MockMvc mockMvc;
@@ -56,15 +92,33 @@ class ApiIntegrationTest {
 
   @Autowired TaskRepository taskRepository;
   @Autowired TomatoRepository tomatoRepository;
+  @Autowired TomatoDailyRepository tomatoDailyRepository;
   @Autowired PunishmentRepository punishmentRepository;
   @Autowired UserRepository userRepository;
+  @Autowired GardenCounterReconciler counterReconciler;
+  @Autowired TimeBombScheduler timeBombScheduler;
+  @Autowired SyncTombstoneRepository syncTombstoneRepository;
+  @Autowired SyncService syncService;
+  @Autowired TaskService taskService;
+  @Autowired MeterRegistry meterRegistry;
+  @Autowired JdbcTemplate jdbcTemplate;
+  @Autowired GardenLedger gardenLedger;
+  @Autowired GardenLedgerReplay gardenLedgerReplay;
+  @Autowired GardenLedgerSnapshotRepository gardenLedgerSnapshotRepository;
+  @Autowired HistoryArchiver historyArchiver;
+  @Autowired ArchivedTaskRepository archivedTaskRepository;
+  @Autowired ArchivedPunishmentRepository archivedPunishmentRepository;
+  @Autowired ReplicaLagMonitor replicaLagMonitor;
 
   @BeforeEach
   void cleanDb() {
     // Order matters if you have constraints
     tomatoRepository.deleteAll();
+    tomatoDailyRepository.deleteAll();
     punishmentRepository.deleteAll();
     taskRepository.deleteAll();
+    archivedPunishmentRepository.deleteAll();
+    archivedTaskRepository.deleteAll();
   }
 
   // -----------------------
@@ -90,6 +144,7 @@ class ApiIntegrationTest {
             ))))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.token").exists())
+        .andExpect(jsonPath("$.user.email").value(email))
         .andReturn()
         .getResponse()
         .getContentAsString();
@@ -107,6 +162,45 @@ class ApiIntegrationTest {
     return Long.parseLong(body);
   }
 
+  private JsonNode garden(String token) throws Exception {
+    return objectMapper.readTree(mockMvc.perform(get("/garden")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString());
+  }
+
+  private void driftCounters(Long userId) {
+    jdbcTemplate.update("update users set tomato_count = 42, active_punishment_count = 3, "
+        + "infestation_level = 3 where id = ?", userId);
+  }
+
+  private double gardenCacheRequests(String result) {
+    return meterRegistry.get("garden.cache.requests").tag("result", result).counter().count();
+  }
+
+  private double readOnlyRoutes(String decision) {
+    return meterRegistry.get("db.routing.readonly").tag("decision", decision).functionCounter().count();
+  }
+
+  private long createTask(String token, String title) throws Exception {
+    String body = mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of("title", title))))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    return objectMapper.readTree(body).get("id").asLong();
+  }
+
+  private JsonNode sync(String token, Long since) throws Exception {
+    String body = mockMvc.perform(get("/sync")
+            .param("since", since == null ? "" : since.toString())
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    return objectMapper.readTree(body);
+  }
+
   private int unauthStatusOf(String method, String path) throws Exception {
     return switch (method) {
       case "GET" -> mockMvc.perform(get(path)).andReturn().getResponse().getStatus();
@@ -302,4 +396,807 @@ class ApiIntegrationTest {
     String token = registerAndLoginGetToken("it7@example.com", "it7", "Password123!");
     assertThat(getTomatoCount(token)).isEqualTo(0);
   }
+
+  @Test
+  void garden_returns_tasks_count_and_punishments_and_honours_etag() throws Exception {
+    String token = registerAndLoginGetToken("it8@example.com", "it8", "Password123!");
+
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("title", "Garden Task");
+    payload.put("priority", "LOW");
+
+    mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(payload)))
+        .andExpect(status().isOk());
+
+    String etag = mockMvc.perform(get("/garden")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.tasks.length()").value(1))
+        .andExpect(jsonPath("$.tomatoCount").value(0))
+        .andExpect(jsonPath("$.activePunishments").isArray())
+        .andReturn().getResponse().getHeader("ETag");
+
+    assertThat(etag).isNotBlank();
+
+    mockMvc.perform(get("/garden")
+            .header("Authorization", "Bearer " + token)
+            .header("If-None-Match", etag))
+        .andExpect(status().isNotModified());
+  }
+
+  @Test
+  void complete_task_with_garden_flag_returns_updated_snapshot() throws Exception {
+    String token = registerAndLoginGetToken("it9@example.com", "it9", "Password123!");
+
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("title", "Complete me");
+    payload.put("priority", "HIGH");
+
+    String created = mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(payload)))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    long taskId = objectMapper.readTree(created).get("id").asLong();
+
+    mockMvc.perform(put("/tasks/" + taskId + "/complete?garden=true")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.task.completed").value(true))
+        .andExpect(jsonPath("$.garden.tasks.length()").value(0))
+        .andExpect(jsonPath("$.garden.tomatoCount").value(1))
+        .andExpect(jsonPath("$.garden.version").exists());
+  }
+
+  @Test
+  void garden_counters_follow_completion_and_reconciler_repairs_drift() throws Exception {
+    String token = registerAndLoginGetToken("it10@example.com", "it10", "Password123!");
+    User user = userRepository.findByEmail("it10@example.com").orElseThrow();
+
+    Task task = taskRepository.save(Task.builder()
+        .title("counted")
+        .userId(user.getId())
+        .createdAt(LocalDateTime.now())
+        .expired(true)
+        .build());
+
+    mockMvc.perform(put("/tasks/" + task.getId() + "/complete")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    assertThat(userRepository.findById(user.getId()).orElseThrow().getTomatoCount()).isEqualTo(1);
+
+    // a username change saves a User loaded before a counter moved; the count survives
+    User stale = userRepository.findById(user.getId()).orElseThrow();
+    jdbcTemplate.update("update users set tomato_count = tomato_count + 1 where id = ?", user.getId());
+    stale.setUsername("renamed");
+    userRepository.save(stale);
+    User renamed = userRepository.findById(user.getId()).orElseThrow();
+    assertThat(renamed.getUsername()).isEqualTo("renamed");
+    assertThat(renamed.getTomatoCount()).isEqualTo(2);
+
+    // simulate drift (the entity never writes the counters), then let the reconciler put it back
+    driftCounters(user.getId());
+
+    assertThat(counterReconciler.reconcile()).isGreaterThanOrEqualTo(1);
+
+    User repaired = userRepository.findById(user.getId()).orElseThrow();
+    assertThat(repaired.getTomatoCount()).isEqualTo(1);
+    assertThat(repaired.getActivePunishmentCount()).isZero();
+    assertThat(repaired.getInfestationLevel()).isZero();
+    assertThat(getTomatoCount(token)).isEqualTo(1);
+  }
+
+  @Test
+  void garden_cache_serves_repeat_reads_but_never_a_garden_older_than_the_last_write() throws Exception {
+    String token = registerAndLoginGetToken("it20@example.com", "it20", "Password123!");
+    User user = userRepository.findByEmail("it20@example.com").orElseThrow();
+
+    // overdue and never seen by the deadline index, so the scheduler's poll expires it
+    Task task = taskRepository.save(Task.builder()
+        .title("cached")
+        .userId(user.getId())
+        .createdAt(LocalDateTime.now().minusHours(1))
+        .dueTime(LocalDateTime.now().minusMinutes(2))
+        .timeBombEnabled(true)
+        .build());
+
+    double hitsBefore = gardenCacheRequests("hit");
+    assertThat(garden(token).get("tasks").get(0).get("expired").asBoolean()).isFalse();
+    assertThat(garden(token).get("tasks").get(0).get("expired").asBoolean()).isFalse();
+    assertThat(gardenCacheRequests("hit")).isEqualTo(hitsBefore + 1);
+
+    // the scheduler's write is seen on the very next read
+    timeBombScheduler.checkExpiredTasks();
+    JsonNode expired = garden(token);
+    assertThat(expired.get("tasks").get(0).get("expired").asBoolean()).isTrue();
+    assertThat(expired.get("activePunishments")).hasSize(1);
+    assertThat(expired.get("infestationLevel").asInt()).isEqualTo(1);
+
+    mockMvc.perform(put("/tasks/" + task.getId() + "/complete")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+    JsonNode completed = garden(token);
+    // open tasks only
+    assertThat(completed.get("tasks")).isEmpty();
+    long tomatoes = completed.get("tomatoCount").asLong();
+    assertThat(tomatoes).isEqualTo(getTomatoCount(token));
+
+    // a counter repair takes a new change version too
+    tomatoRepository.save(Tomato.builder()
+        .userId(user.getId())
+        .taskId(task.getId())
+        .timestamp(LocalDateTime.now())
+        .build());
+    counterReconciler.reconcile();
+    assertThat(garden(token).get("tomatoCount").asLong()).isEqualTo(tomatoes + 1);
+  }
+
+  @Test
+  void garden_ledger_folds_to_the_live_garden_and_replay_rebuilds_the_counters() throws Exception {
+    String token = registerAndLoginGetToken("it21@example.com", "it21", "Password123!");
+    Long userId = userRepository.findByEmail("it21@example.com").orElseThrow().getId();
+
+    long done = createTask(token, "done");
+    long dropped = createTask(token, "dropped");
+    long kept = createTask(token, "kept");
+    mockMvc.perform(put("/tasks/" + done + "/complete").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+    mockMvc.perform(delete("/tasks/" + dropped).header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    // created last: the deadline index can expire it straight away, and the completion
+    // above would otherwise resolve its punishment
+    String late = mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of(
+                "title", "late", "dueTime", LocalDateTime.now().minusMinutes(1).toString()))))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    long overdue = objectMapper.readTree(late).get("id").asLong();
+    // the deadline index or the poll, whichever gets there first
+    timeBombScheduler.checkExpiredTasks();
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!taskRepository.findById(overdue).orElseThrow().isExpired()
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+
+    GardenLedgerState expired = gardenLedger.currentState(userId);
+    assertThat(expired.getOpenTaskIds()).containsExactlyInAnyOrder(kept, overdue);
+    assertThat(expired.getOverdueTaskIds()).containsExactly(overdue);
+    assertThat(expired.getActivePunishments()).isEqualTo(1);
+
+    mockMvc.perform(put("/tasks/" + overdue + "/complete").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    User live = userRepository.findById(userId).orElseThrow();
+    GardenLedgerState state = gardenLedger.currentState(userId);
+    assertThat(state.getOpenTaskIds()).containsExactly(kept);
+    assertThat(state.getOverdueTaskIds()).isEmpty();
+    assertThat(state.getTomatoCount()).isEqualTo(live.getTomatoCount())
+        .isEqualTo(tomatoRepository.countByUserId(userId));
+    assertThat(state.getActivePunishments()).isEqualTo(live.getActivePunishmentCount());
+    // app.ledger.snapshot-every is 3 here
+    assertThat(gardenLedgerSnapshotRepository.findAll())
+        .filteredOn(s -> s.getUserId().equals(userId))
+        .hasSizeGreaterThan(2);
+
+    // the counters drift; the replay puts them back from the ledger
+    driftCounters(userId);
+
+    assertThat(gardenLedgerReplay.replay(userId)).isTrue();
+
+    User replayed = userRepository.findById(userId).orElseThrow();
+    assertThat(replayed.getTomatoCount()).isEqualTo(state.getTomatoCount());
+    assertThat(replayed.getActivePunishmentCount()).isEqualTo(state.getActivePunishments());
+    assertThat(replayed.getInfestationLevel()).isEqualTo(state.getActivePunishments());
+    assertThat(gardenLedger.currentState(userId)).isEqualTo(state);
+    assertThat(garden(token).get("tomatoCount").asLong()).isEqualTo(state.getTomatoCount());
+  }
+
+  @Test
+  void archiver_moves_old_history_out_and_includeArchived_reads_it_back() throws Exception {
+    String token = registerAndLoginGetToken("it22@example.com", "it22", "Password123!");
+    Long userId = userRepository.findByEmail("it22@example.com").orElseThrow().getId();
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime old = now.minusDays(200);
+
+    // 0..4: completed long ago, 5: completed recently, 6: open
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      ids.add(taskRepository.save(Task.builder()
+          .title("task " + i)
+          .userId(userId)
+          .createdAt(old)
+          .dueTime(now.plusDays(10 - i))
+          .completed(i < 6)
+          .completedAt(i < 5 ? old : i == 5 ? now : null)
+          .build()).getId());
+    }
+    Punishment resolvedLongAgo = punishmentRepository.save(Punishment.builder()
+        .userId(userId).taskId(ids.get(0)).createdAt(old).type(PunishmentType.WEEDS)
+        .resolved(true).resolvedAt(old).build());
+    // resolved before resolvedAt was recorded: goes by createdAt
+    Punishment resolvedUndated = punishmentRepository.save(Punishment.builder()
+        .userId(userId).taskId(ids.get(0)).createdAt(old).type(PunishmentType.WEEDS).resolved(true).build());
+    Punishment resolvedToday = punishmentRepository.save(Punishment.builder()
+        .userId(userId).taskId(ids.get(0)).createdAt(old).type(PunishmentType.WEEDS)
+        .resolved(true).resolvedAt(now).build());
+    Punishment active = punishmentRepository.save(Punishment.builder()
+        .userId(userId).taskId(ids.get(0)).createdAt(old).type(PunishmentType.WEEDS).resolved(false).build());
+    long versionBefore = userRepository.findChangeVersion(userId).orElseThrow();
+
+    // batches of 2 here
+    assertThat(historyArchiver.archive()).isEqualTo(7);
+    assertThat(historyArchiver.archive()).isZero();
+
+    assertThat(taskRepository.findByUserId(userId)).extracting(Task::getId)
+        .containsExactlyInAnyOrder(ids.get(5), ids.get(6));
+    assertThat(archivedTaskRepository.findAll()).extracting(ArchivedTask::getId)
+        .containsExactlyInAnyOrderElementsOf(ids.subList(0, 5));
+    assertThat(userRepository.findChangeVersion(userId).orElseThrow()).isGreaterThan(versionBefore);
+
+    // synced clients are told to drop what moved
+    List<Map<String, Object>> archived = new ArrayList<>();
+    ids.subList(0, 5).forEach(id -> archived.add(Map.of("type", "TASK", "id", id.intValue())));
+    archived.add(Map.of("type", "PUNISHMENT", "id", resolvedLongAgo.getId().intValue()));
+    archived.add(Map.of("type", "PUNISHMENT", "id", resolvedUndated.getId().intValue()));
+    assertThat(objectMapper.convertValue(sync(token, versionBefore).get("deleted"), List.class))
+        .containsExactlyInAnyOrderElementsOf(archived);
+
+    mockMvc.perform(get("/tasks").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(2));
+
+    // newest first across both tables, three per page
+    List<Long> seen = new ArrayList<>();
+    String cursor = "";
+    do {
+      JsonNode page = objectMapper.readTree(mockMvc.perform(get("/tasks?includeArchived=true&limit=3&cursor=" + cursor)
+              .header("Authorization", "Bearer " + token))
+          .andExpect(status().isOk())
+          .andReturn().getResponse().getContentAsString());
+      page.get("items").forEach(t -> seen.add(t.get("id").asLong()));
+      cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+    } while (cursor != null);
+    assertThat(seen).containsExactlyElementsOf(ids.reversed());
+
+    // soonest due first: the live tasks 6 and 5, then the archived task 4
+    mockMvc.perform(get("/tasks?includeArchived=true&sort=DUE&limit=3")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].title").value("task 6"))
+        .andExpect(jsonPath("$.items[1].title").value("task 5"))
+        .andExpect(jsonPath("$.items[2].title").value("task 4"))
+        .andExpect(jsonPath("$.nextCursor").exists());
+
+    mockMvc.perform(get("/punishments").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+    mockMvc.perform(get("/punishments?includeArchived=true").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(4))
+        .andExpect(jsonPath("$[0].id").value(resolvedLongAgo.getId()))
+        .andExpect(jsonPath("$[1].id").value(resolvedUndated.getId()))
+        .andExpect(jsonPath("$[2].id").value(resolvedToday.getId()))
+        .andExpect(jsonPath("$[3].id").value(active.getId()));
+  }
+
+  @Test
+  void read_only_requests_use_the_replica_except_right_after_the_users_own_write() throws Exception {
+    // the first heartbeat check only finds the replica ready once a stamp has been written
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!replicaLagMonitor.isReplicaUsable() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertThat(replicaLagMonitor.isReplicaUsable()).isTrue();
+
+    String token = registerAndLoginGetToken("it23@example.com", "it23", "Password123!");
+    createTask(token, "fresh");
+    double sticky = readOnlyRoutes("sticky");
+    double replica = readOnlyRoutes("replica");
+
+    mockMvc.perform(get("/tasks").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1));
+    assertThat(readOnlyRoutes("sticky")).isGreaterThan(sticky);
+
+    // app.datasource.replica.sticky-ms is 300 here
+    Thread.sleep(400);
+    mockMvc.perform(get("/tasks").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1));
+    assertThat(readOnlyRoutes("replica")).isGreaterThan(replica);
+  }
+
+  @Test
+  void task_listing_pages_with_cursor_and_filters() throws Exception {
+    registerAndLoginGetToken("it11@example.com", "it11", "Password123!");
+    String token = registerAndLoginGetToken("it12@example.com", "it12", "Password123!");
+    User user = userRepository.findByEmail("it12@example.com").orElseThrow();
+    LocalDateTime now = LocalDateTime.now();
+
+    for (int i = 0; i < 5; i++) {
+      taskRepository.save(Task.builder()
+          .title("task " + i)
+          .userId(user.getId())
+          .createdAt(now)
+          .dueTime(i % 2 == 0 ? now.plusDays(5 - i) : null)
+          .completed(i == 4)
+          .build());
+    }
+    // someone else's task never shows up
+    Long otherUserId = userRepository.findByEmail("it11@example.com").orElseThrow().getId();
+    taskRepository.save(Task.builder().title("other").userId(otherUserId).createdAt(now).build());
+
+    // newest first, two per page
+    JsonNode first = objectMapper.readTree(mockMvc.perform(get("/tasks?limit=2")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(2))
+        .andExpect(jsonPath("$.items[0].title").value("task 4"))
+        .andReturn().getResponse().getContentAsString());
+
+    String cursor = first.get("nextCursor").asText();
+    JsonNode second = objectMapper.readTree(mockMvc.perform(get("/tasks?limit=2&cursor=" + cursor)
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].title").value("task 2"))
+        .andReturn().getResponse().getContentAsString());
+
+    mockMvc.perform(get("/tasks?limit=2&cursor=" + second.get("nextCursor").asText())
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    // open tasks with a due time, soonest first: task 2 (in 3 days), then task 0 (in 5)
+    mockMvc.perform(get("/tasks?sort=DUE&completed=false")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(2))
+        .andExpect(jsonPath("$.items[0].title").value("task 2"))
+        .andExpect(jsonPath("$.items[1].title").value("task 0"));
+
+    mockMvc.perform(get("/tasks?sort=DUE&dueFrom=" + now.plusDays(4))
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1))
+        .andExpect(jsonPath("$.items[0].title").value("task 0"));
+
+    mockMvc.perform(get("/tasks?cursor=not-a-cursor")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void tomato_history_export_streams_ndjson_in_range() throws Exception {
+    String token = registerAndLoginGetToken("it13@example.com", "it13", "Password123!");
+    User user = userRepository.findByEmail("it13@example.com").orElseThrow();
+    LocalDateTime base = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    for (int day = 0; day < 5; day++) {
+      tomatoRepository.save(Tomato.builder()
+          .userId(user.getId())
+          .taskId((long) day)
+          .timestamp(base.plusDays(day))
+          .build());
+    }
+
+    // days 1..3, newest first, capped at 2
+    MvcResult started = mockMvc.perform(get("/tomatoes/history/export")
+            .param("from", base.plusDays(1).toString())
+            .param("to", base.plusDays(4).toString())
+            .param("limit", "2")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    String body = mockMvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsString();
+
+    String[] lines = body.strip().split("\n");
+    assertThat(lines).hasSize(2);
+    assertThat(objectMapper.readTree(lines[0]).get("taskId").asLong()).isEqualTo(3);
+    assertThat(objectMapper.readTree(lines[1]).get("taskId").asLong()).isEqualTo(2);
+
+    mockMvc.perform(get("/tomatoes/history/export?limit=0")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void tomato_series_follows_rollup_and_reconciler_rebuilds_it() throws Exception {
+    String token = registerAndLoginGetToken("it14@example.com", "it14", "Password123!");
+    User user = userRepository.findByEmail("it14@example.com").orElseThrow();
+    LocalDate today = LocalDate.now();
+
+    long[] taskIds = new long[2];
+    for (int i = 0; i < 2; i++) {
+      taskIds[i] = taskRepository.save(Task.builder()
+          .title("chart " + i)
+          .userId(user.getId())
+          .createdAt(LocalDateTime.now())
+          .expired(true)
+          .build()).getId();
+      mockMvc.perform(put("/tasks/" + taskIds[i] + "/complete")
+              .header("Authorization", "Bearer " + token))
+          .andExpect(status().isOk());
+    }
+
+    mockMvc.perform(get("/tomatoes/series")
+            .param("bucket", "DAY")
+            .param("from", today.minusDays(2).toString())
+            .param("to", today.plusDays(1).toString())
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.points.length()").value(3))
+        .andExpect(jsonPath("$.points[0].tomatoes").value(0))
+        .andExpect(jsonPath("$.points[2].start").value(today.toString()))
+        .andExpect(jsonPath("$.points[2].tomatoes").value(2));
+
+    mockMvc.perform(delete("/tasks/" + taskIds[0])
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    mockMvc.perform(get("/tomatoes/series")
+            .param("bucket", "MONTH")
+            .param("from", today.toString())
+            .param("to", today.plusDays(1).toString())
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.from").value(today.withDayOfMonth(1).toString()))
+        .andExpect(jsonPath("$.points.length()").value(1))
+        .andExpect(jsonPath("$.points[0].tomatoes").value(1));
+
+    // lose the rollup, then let the reconciler rebuild it from the tomatoes table
+    tomatoDailyRepository.deleteAll();
+    counterReconciler.reconcile();
+
+    assertThat(tomatoDailyRepository.findRange(user.getId(), today, today.plusDays(1)))
+        .singleElement()
+        .satisfies(d -> assertThat(d.tomatoes()).isEqualTo(1));
+  }
+
+  @Test
+  void garden_event_stream_pushes_changes_and_replays_after_reconnect() throws Exception {
+    String token = registerAndLoginGetToken("it15@example.com", "it15", "Password123!");
+
+    MvcResult stream = mockMvc.perform(get("/garden/events")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    String connected = awaitEvent(stream, "CONNECTED");
+
+    mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of("title", "Pushed"))))
+        .andExpect(status().isOk());
+    assertThat(awaitEvent(stream, "TASK_CREATED")).contains("\"title\":\"Pushed\"");
+
+    // a client that reconnects from the CONNECTED id gets the task it missed
+    String lastId = connected.lines().filter(l -> l.startsWith("id:")).findFirst().orElseThrow().substring(3);
+    MvcResult resumed = mockMvc.perform(get("/garden/events")
+            .header("Authorization", "Bearer " + token)
+            .header("Last-Event-ID", lastId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    assertThat(awaitEvent(resumed, "TASK_CREATED")).contains("Pushed");
+
+    // one from before a restart can't be replayed
+    MvcResult stale = mockMvc.perform(get("/garden/events")
+            .header("Authorization", "Bearer " + token)
+            .header("Last-Event-ID", "1-1"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    awaitEvent(stale, "RESYNC");
+  }
+
+  @Test
+  void batch_endpoints_report_each_item_and_keep_tomatoes_and_punishments_right() throws Exception {
+    String token = registerAndLoginGetToken("it17@example.com", "it17", "Password123!");
+    User user = userRepository.findByEmail("it17@example.com").orElseThrow();
+    String otherToken = registerAndLoginGetToken("it17b@example.com", "it17b", "Password123!");
+    User other = userRepository.findByEmail("it17b@example.com").orElseThrow();
+
+    String created = mockMvc.perform(post("/tasks/batch")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of("tasks", List.of(
+                Map.of("title", "one"),
+                Map.of("title", " "),
+                Map.of("title", "two", "dueTime", LocalDateTime.now().plusDays(1).toString()),
+                Map.of("title", "three", "priority", "HIGH"))))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(4))
+        .andExpect(jsonPath("$.items[0].status").value("CREATED"))
+        .andExpect(jsonPath("$.items[1].status").value("INVALID"))
+        .andExpect(jsonPath("$.items[1].error").value("Title must not be blank"))
+        .andExpect(jsonPath("$.items[2].task.timeBombEnabled").value(true))
+        .andExpect(jsonPath("$.items[3].task.priority").value("HIGH"))
+        .andReturn().getResponse().getContentAsString();
+    JsonNode items = objectMapper.readTree(created).get("items");
+    long one = items.get(0).get("id").asLong();
+    long two = items.get(2).get("id").asLong();
+    long three = items.get(3).get("id").asLong();
+    assertThat(taskRepository.findById(two).orElseThrow().getUserId()).isEqualTo(user.getId());
+
+    // "one" is overdue and expired: tomato. "two" pays off the single open punishment,
+    // so "three" earns a tomato again.
+    Task expired = taskRepository.findById(one).orElseThrow();
+    expired.setExpired(true);
+    taskRepository.save(expired);
+    punishmentRepository.save(Punishment.builder()
+        .userId(user.getId())
+        .taskId(one)
+        .type(PunishmentType.WEEDS)
+        .createdAt(LocalDateTime.now())
+        .resolved(false)
+        .build());
+    Task foreign = taskRepository.save(Task.builder()
+        .title("not yours")
+        .userId(other.getId())
+        .createdAt(LocalDateTime.now())
+        .build());
+
+    mockMvc.perform(post("/tasks/batch/complete")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of(
+                "ids", List.of(one, two, three, one, foreign.getId(), 999_999_999L)))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].status").value("COMPLETED"))
+        .andExpect(jsonPath("$.items[0].task.tomatoesEarned").value(1))
+        .andExpect(jsonPath("$.items[1].task.tomatoesEarned").value(0))
+        .andExpect(jsonPath("$.items[2].task.tomatoesEarned").value(1))
+        .andExpect(jsonPath("$.items[3].status").value("ALREADY_COMPLETED"))
+        .andExpect(jsonPath("$.items[4].status").value("NOT_FOUND"))
+        .andExpect(jsonPath("$.items[5].status").value("NOT_FOUND"));
+
+    assertThat(getTomatoCount(token)).isEqualTo(2);
+    assertThat(tomatoRepository.countByUserId(user.getId())).isEqualTo(2);
+    assertThat(punishmentRepository.findByUserIdAndResolvedFalse(user.getId())).isEmpty();
+    assertThat(userRepository.findById(user.getId()).orElseThrow().getActivePunishmentCount()).isZero();
+    assertThat(taskRepository.findById(two).orElseThrow().isCompleted()).isTrue();
+    assertThat(taskRepository.findById(foreign.getId()).orElseThrow().isCompleted()).isFalse();
+
+    // deleting completed tasks takes their tomatoes back; someone else's task survives
+    mockMvc.perform(post("/tasks/batch/delete")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of(
+                "ids", List.of(one, two, foreign.getId(), one)))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].status").value("DELETED"))
+        .andExpect(jsonPath("$.items[1].status").value("DELETED"))
+        .andExpect(jsonPath("$.items[2].status").value("NOT_FOUND"))
+        .andExpect(jsonPath("$.items[3].status").value("NOT_FOUND"));
+
+    assertThat(getTomatoCount(token)).isEqualTo(1);
+    assertThat(tomatoRepository.countByUserId(user.getId())).isEqualTo(1);
+    assertThat(taskRepository.existsById(one)).isFalse();
+    assertThat(taskRepository.existsById(foreign.getId())).isTrue();
+    assertThat(getTomatoCount(otherToken)).isZero();
+
+    // oversized batches are refused outright
+    List<Long> tooMany = LongStream.rangeClosed(1, 101).boxed().toList();
+    mockMvc.perform(post("/tasks/batch/delete")
+            .header("Authorization", "Bearer " + token)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of("ids", tooMany))))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void sync_returns_only_changes_since_the_given_version_with_tombstones() throws Exception {
+    String token = registerAndLoginGetToken("it18@example.com", "it18", "Password123!");
+    String otherToken = registerAndLoginGetToken("it18b@example.com", "it18b", "Password123!");
+
+    long kept = createTask(token, "kept");
+    long done = createTask(token, "done");
+    createTask(otherToken, "someone else's");
+
+    // first sync: the full state
+    JsonNode first = sync(token, null);
+    assertThat(first.get("resync").asBoolean()).isTrue();
+    assertThat(first.get("tasks")).hasSize(2);
+    long v1 = first.get("version").asLong();
+
+    mockMvc.perform(put("/tasks/" + done + "/complete")
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    JsonNode second = sync(token, v1);
+    assertThat(second.get("resync").asBoolean()).isFalse();
+    assertThat(second.get("tasks")).hasSize(1);
+    assertThat(second.get("tasks").get(0).get("id").asLong()).isEqualTo(done);
+    assertThat(second.get("tasks").get(0).get("completed").asBoolean()).isTrue();
+    assertThat(second.get("tomatoes")).hasSize(1);
+    assertThat(second.get("deleted")).isEmpty();
+    long v2 = second.get("version").asLong();
+    assertThat(v2).isGreaterThan(v1);
+    long tomatoId = second.get("tomatoes").get(0).get("id").asLong();
+
+    // deleting the completed task leaves tombstones for it and its tomato
+    mockMvc.perform(delete("/tasks/" + done)
+            .header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    JsonNode third = sync(token, v2);
+    assertThat(third.get("tasks")).isEmpty();
+    assertThat(third.get("tomatoes")).isEmpty();
+    assertThat(objectMapper.convertValue(third.get("deleted"), List.class)).containsExactlyInAnyOrder(
+        Map.of("type", "TASK", "id", (int) done),
+        Map.of("type", "TOMATO", "id", (int) tomatoId));
+    long v3 = third.get("version").asLong();
+
+    // nothing new: empty and the same version; a version we never handed out: resync
+    JsonNode idle = sync(token, v3);
+    assertThat(idle.get("version").asLong()).isEqualTo(v3);
+    assertThat(idle.get("tasks")).isEmpty();
+    assertThat(idle.get("deleted")).isEmpty();
+    JsonNode unknown = sync(token, v3 + 100);
+    assertThat(unknown.get("resync").asBoolean()).isTrue();
+    assertThat(unknown.get("tasks")).hasSize(1);
+    assertThat(unknown.get("tasks").get(0).get("id").asLong()).isEqualTo(kept);
+
+    // once the tombstones are pruned, clients from before them must resync
+    syncTombstoneRepository.findAll().forEach(t -> {
+      t.setDeletedAt(LocalDateTime.now().minusDays(365));
+      syncTombstoneRepository.save(t);
+    });
+    syncService.pruneTombstones();
+    assertThat(sync(token, v2).get("resync").asBoolean()).isTrue();
+    assertThat(sync(token, v3).get("resync").asBoolean()).isFalse();
+  }
+
+  @Test
+  void concurrent_completes_award_once_and_retried_creates_are_not_duplicated() throws Exception {
+    String token = registerAndLoginGetToken("it19@example.com", "it19", "Password123!");
+    User user = userRepository.findByEmail("it19@example.com").orElseThrow();
+
+    // two devices complete the same tasks at once: one tomato per task, never two
+    for (int i = 0; i < 10; i++) {
+      long id = createTask(token, "race " + i);
+      CountDownLatch go = new CountDownLatch(1);
+      List<CompletableFuture<Task>> devices = List.of(
+          CompletableFuture.supplyAsync(() -> completeWhen(go, id, user.getId())),
+          CompletableFuture.supplyAsync(() -> completeWhen(go, id, user.getId())));
+      go.countDown();
+      CompletableFuture.allOf(devices.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+    }
+    assertThat(tomatoRepository.countByUserId(user.getId())).isEqualTo(10);
+    assertThat(getTomatoCount(token)).isEqualTo(10);
+
+    // a retried create with the same Idempotency-Key gets the first task back
+    String body = objectMapper.writeValueAsString(Map.of("title", "once"));
+    String first = mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .header("Idempotency-Key", "create-once")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Idempotent-Replayed"))
+        .andReturn().getResponse().getContentAsString();
+    long id = objectMapper.readTree(first).get("id").asLong();
+
+    mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .header("Idempotency-Key", "create-once")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Idempotent-Replayed", "true"))
+        .andExpect(jsonPath("$.id").value(id));
+    mockMvc.perform(post("/tasks")
+            .header("Authorization", "Bearer " + token)
+            .header("Idempotency-Key", "create-once")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(Map.of("title", "something else"))))
+        .andExpect(status().isBadRequest());
+
+    assertThat(taskRepository.findByUserId(user.getId()))
+        .filteredOn(t -> t.getTitle().equals("once"))
+        .hasSize(1);
+  }
+
+  private Task completeWhen(CountDownLatch go, long taskId, long userId) {
+    try {
+      go.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return taskService.completeTask(taskId, userId);
+  }
+
+  @Test
+  void prometheus_scrape_is_refused_through_the_proxy_but_health_is_public() throws Exception {
+    mockMvc.perform(get("/actuator/prometheus").header("X-Forwarded-For", "203.0.113.5"))
+        .andExpect(status().isForbidden());
+    MvcResult remote = mockMvc.perform(get("/actuator/prometheus").with(request -> {
+          request.setRemoteAddr("203.0.113.5");
+          return request;
+        }))
+        .andReturn();
+    assertThat(remote.getResponse().getStatus()).isEqualTo(403);
+    mockMvc.perform(get("/actuator/health").header("X-Forwarded-For", "203.0.113.5"))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  void prometheus_scrape_exposes_latency_expiry_lag_and_pool_metrics() throws Exception {
+    String token = registerAndLoginGetToken("it16@example.com", "it16", "Password123!");
+    User user = userRepository.findByEmail("it16@example.com").orElseThrow();
+
+    // other tests expire through the poll too
+    String before = mockMvc.perform(get("/actuator/prometheus"))
+        .andReturn().getResponse().getContentAsString();
+
+    // overdue and never seen by the deadline index, so the scheduler's poll expires it
+    taskRepository.save(Task.builder()
+        .title("late")
+        .userId(user.getId())
+        .createdAt(LocalDateTime.now().minusHours(1))
+        .dueTime(LocalDateTime.now().minusMinutes(2))
+        .timeBombEnabled(true)
+        .build());
+    timeBombScheduler.checkExpiredTasks();
+
+    mockMvc.perform(get("/tasks").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    // no user token needed to scrape
+    String scrape = mockMvc.perform(get("/actuator/prometheus"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    assertThat(scrape)
+        .contains("http_server_requests_seconds_bucket")
+        .contains("app_service_seconds_count{application=\"tomato\",class=\"com.lelin.tomato.service.TaskService\"")
+        .contains("auth_jwt_filter_seconds_count")
+        .contains("auth_hashing_duration_seconds")
+        .contains("hikaricp_connections_active")
+        .contains("hibernate_sessions_open_total")
+        .contains("tasks_expiry_run_size_count")
+        .contains("tasks_expiry_run_duration_seconds_count");
+    // lag is at least the two minutes the task sat overdue: nothing in the 1m bucket, one in +Inf
+    assertThat(expiryLagBucket(scrape, "60.0") - expiryLagBucket(before, "60.0")).isZero();
+    assertThat(expiryLagBucket(scrape, "+Inf") - expiryLagBucket(before, "+Inf")).isEqualTo(1);
+  }
+
+  // 0 before the first poll expiry has registered the timer
+  private double expiryLagBucket(String scrape, String le) {
+    return scrape.lines()
+        .filter(l -> l.startsWith("tasks_expiry_lag_seconds_bucket") && l.contains("path=\"poll\"")
+            && l.contains("le=\"" + le + "\""))
+        .mapToDouble(l -> Double.parseDouble(l.substring(l.lastIndexOf(' ') + 1)))
+        .findFirst()
+        .orElse(0);
+  }
+
+  // the first SSE frame of the given event name, once it has been written
+  private String awaitEvent(MvcResult stream, String name) throws Exception {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (System.currentTimeMillis() < deadline) {
+      // only frames already terminated by a blank line; the last one may still be arriving
+      String content = stream.getResponse().getContentAsString();
+      for (String frame : content.substring(0, Math.max(0, content.lastIndexOf("\n\n"))).split("\n\n")) {
+        if (frame.lines().anyMatch(l -> l.equals("event:" + name))) {
+          return frame;
+        }
+      }
+      Thread.sleep(20);
+    }
+    throw new AssertionError("No " + name + " event in: " + stream.getResponse().getContentAsString());
+  }
 }
@@ -0,0 +1,65 @@
+package com.lelin.tomato;
+
+import com.mysql.cj.MysqlConnection;
+import com.mysql.cj.Query;
+import com.mysql.cj.interceptors.QueryInterceptor;
+import com.mysql.cj.log.Log;
+import com.mysql.cj.protocol.Resultset;
+import com.mysql.cj.protocol.ServerSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Connector/J query interceptor that records the statements the driver actually
+ * sends on the current thread, parameters already bound. Enable it with the
+ * queryInterceptors URL parameter; QueryPlanRegressionTest uses it to EXPLAIN the
+ * SQL Hibernate generates rather than a hand-written copy of it.
+ */
+public class CapturedSql implements QueryInterceptor {
+
+  private static final ThreadLocal<List<String>> CAPTURED = new ThreadLocal<>();
+
+  // every statement sent while call ran on this thread, in order
+  static List<String> during(Runnable call) {
+    List<String> sql = new ArrayList<>();
+    CAPTURED.set(sql);
+    try {
+      call.run();
+    } finally {
+      CAPTURED.remove();
+    }
+    return sql;
+  }
+
+  @Override
+  public QueryInterceptor init(MysqlConnection conn, Properties props, Log log) {
+    return this;
+  }
+
+  @Override
+  public <T extends Resultset> T preProcess(Supplier<String> sql, Query interceptedQuery) {
+    List<String> captured = CAPTURED.get();
+    if (captured != null) {
+      captured.add(sql.get());
+    }
+    return null;
+  }
+
+  @Override
+  public boolean executeTopLevelOnly() {
+    return true;
+  }
+
+  @Override
+  public void destroy() {
+  }
+
+  @Override
+  public <T extends Resultset> T postProcess(Supplier<String> sql, Query interceptedQuery,
+      T originalResultSet, ServerSession serverSession) {
+    return null;
+  }
+}
@@ -0,0 +1,110 @@
+package com.lelin.tomato;
+
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.Task;
+import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.TaskRepository;
+import com.lelin.tomato.service.ExpiryLeaseManager;
+import com.lelin.tomato.service.TimeBombScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Boots two application contexts against one MySQL database and checks that
+ * they split the expiry partitions between them and never punish a task twice.
+ */
+@Testcontainers
+class ClusteredExpiryIntegrationTest {
+
+  @Container
+  static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+      .withDatabaseName("tomato_test")
+      .withUsername("test")
+      .withPassword("test");
+
+  private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+  private ConfigurableApplicationContext startNode(String nodeId) {
+    ConfigurableApplicationContext ctx = new SpringApplicationBuilder(TomatoApplication.class)
+        .profiles("test")
+        .run(
+            "--server.port=0",
+            "--spring.datasource.url=" + mysql.getJdbcUrl(),
+            "--spring.datasource.username=" + mysql.getUsername(),
+            "--spring.datasource.password=" + mysql.getPassword(),
+            "--jwt.secret=12345678901234567890123456789012",
+            "--jwt.expiration=86400000",
+            "--app.scheduler.cluster.enabled=true",
+            "--app.scheduler.cluster.node-id=" + nodeId);
+    nodes.add(ctx);
+    return ctx;
+  }
+
+  @AfterEach
+  void stopNodes() {
+    nodes.forEach(ConfigurableApplicationContext::close);
+  }
+
+  @Test
+  void two_nodes_split_partitions_and_punish_each_task_once() throws Exception {
+    ConfigurableApplicationContext a = startNode("node-a");
+    ConfigurableApplicationContext b = startNode("node-b");
+
+    TimeBombScheduler schedulerA = a.getBean(TimeBombScheduler.class);
+    TimeBombScheduler schedulerB = b.getBean(TimeBombScheduler.class);
+
+    // a couple of rounds lets node-a hand back the partitions it grabbed alone
+    for (int i = 0; i < 3; i++) {
+      schedulerA.renewLeases();
+      schedulerB.renewLeases();
+    }
+
+    Set<Integer> ownedA = a.getBean(ExpiryLeaseManager.class).getOwnedPartitions();
+    Set<Integer> ownedB = b.getBean(ExpiryLeaseManager.class).getOwnedPartitions();
+    assertThat(ownedA).isNotEmpty();
+    assertThat(ownedB).isNotEmpty();
+    assertThat(ownedA).doesNotContainAnyElementsOf(ownedB);
+
+    TaskRepository taskRepository = a.getBean(TaskRepository.class);
+    List<Task> seeded = new ArrayList<>();
+    for (long i = 0; i < 200; i++) {
+      seeded.add(Task.builder()
+          .title("overdue " + i)
+          .userId(1000 + (i % 50))
+          .createdAt(LocalDateTime.now().minusHours(1))
+          .dueTime(LocalDateTime.now().minusMinutes(1))
+          .timeBombEnabled(true)
+          .build());
+    }
+    taskRepository.saveAll(seeded);
+
+    CompletableFuture.allOf(
+        CompletableFuture.runAsync(schedulerA::checkExpiredTasks),
+        CompletableFuture.runAsync(schedulerB::checkExpiredTasks)
+    ).get();
+
+    List<Punishment> punishments = a.getBean(PunishmentRepository.class).findAll();
+    Set<Long> punishedTaskIds = punishments.stream()
+        .map(Punishment::getTaskId)
+        .collect(Collectors.toCollection(HashSet::new));
+
+    assertThat(punishments).hasSize(200);
+    assertThat(punishedTaskIds).hasSize(200);
+    assertThat(taskRepository.findAll()).allMatch(Task::isExpired);
+  }
+}
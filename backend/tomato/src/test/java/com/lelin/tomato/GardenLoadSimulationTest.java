@@ -0,0 +1,316 @@
+package com.lelin.tomato;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import com.lelin.tomato.security.JWTUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Capacity-planning run that needs neither Docker nor MySQL: boots the app on the
+ * loadtest profile (in-memory H2 in MySQL mode, see application-loadtest.yml) and
+ * drives it over HTTP with thousands of simulated users, each on its own virtual
+ * thread. With think time between actions, a user creates tasks due 5-60 s out,
+ * completes about half of them before they are due and lets the rest expire, polls
+ * GET /garden and now and then catches up with GET /sync.
+ *
+ * Reports throughput and p50/p99/p999 latency per endpoint, measured at the client
+ * after the ramp-up, and the server's expiry lag (tasks.expiry.lag, by path) to stdout
+ * and target/garden-load.csv. Then checks that no overdue task was left unexpired.
+ *
+ * Opt-in, since it runs for a couple of minutes:
+ *   mvn test -Dtest=GardenLoadSimulationTest -Dloadtest=true
+ *   (-Dloadtest.users=2000 -Dloadtest.seconds=60 -Dloadtest.ramp-seconds=10
+ *    -Dloadtest.think-ms=1000 -Dloadtest.virtual=false)
+ * App settings can be overridden the same way, e.g. -Dapp.ratelimit.max-concurrent=200
+ * to find the database's limit rather than the admission filter's. 429s and 503s are
+ * counted as shed load, not errors.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class GardenLoadSimulationTest {
+
+  private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+  private static final int SECONDS = Integer.getInteger("loadtest.seconds", 60);
+  private static final int RAMP_SECONDS = Integer.getInteger("loadtest.ramp-seconds", 10);
+  private static final int THINK_MS = Integer.getInteger("loadtest.think-ms", 1000);
+  private static final boolean VIRTUAL = Boolean.getBoolean("loadtest.virtual");
+  private static final int MIN_DUE_SECONDS = 5;
+  private static final int MAX_DUE_SECONDS = 60;
+  private static final Path REPORT = Path.of("target", "garden-load.csv");
+
+  private enum Endpoint {
+    CREATE_TASK("POST /tasks"),
+    COMPLETE_TASK("PUT /tasks/{id}/complete"),
+    GARDEN("GET /garden"),
+    SYNC("GET /sync");
+
+    private final String label;
+
+    Endpoint(String label) {
+      this.label = label;
+    }
+  }
+
+  // one user's samples, merged at the end
+  private static final class Stats {
+    final Map<Endpoint, List<Long>> latencies = new EnumMap<>(Endpoint.class);
+    final Map<Endpoint, long[]> outcomes = new EnumMap<>(Endpoint.class); // ok, rejected, error
+    long tasksCreated;
+    long tasksCompleted;
+
+    Stats() {
+      for (Endpoint e : Endpoint.values()) {
+        latencies.put(e, new ArrayList<>());
+        outcomes.put(e, new long[3]);
+      }
+    }
+
+    void merge(Stats other) {
+      for (Endpoint e : Endpoint.values()) {
+        latencies.get(e).addAll(other.latencies.get(e));
+        for (int i = 0; i < 3; i++) {
+          outcomes.get(e)[i] += other.outcomes.get(e)[i];
+        }
+      }
+      tasksCreated += other.tasksCreated;
+      tasksCompleted += other.tasksCompleted;
+    }
+  }
+
+  private record PendingCompletion(long taskId, long atNanos) {
+  }
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final HttpClient http = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .executor(Executors.newVirtualThreadPerTaskExecutor())
+      .build();
+
+  @Test
+  void simulate_users_and_report_latency_and_expiry_lag() throws Exception {
+    try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(TomatoApplication.class)
+        .profiles("loadtest")
+        .run("--server.port=0", "--spring.threads.virtual.enabled=" + VIRTUAL)) {
+      String base = "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port");
+      List<String> tokens = seedUsers(ctx);
+
+      long start = System.nanoTime();
+      long measureFrom = start + TimeUnit.SECONDS.toNanos(RAMP_SECONDS);
+      long deadline = measureFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+      Stats total = new Stats();
+
+      try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+        List<Future<Stats>> running = new ArrayList<>();
+        for (int u = 0; u < tokens.size(); u++) {
+          String token = tokens.get(u);
+          // users log on evenly over the ramp
+          long startAt = start + TimeUnit.SECONDS.toNanos(RAMP_SECONDS) * u / tokens.size();
+          running.add(users.submit(() -> simulateUser(base, token, startAt, measureFrom, deadline)));
+        }
+        for (Future<Stats> f : running) {
+          total.merge(f.get());
+        }
+      }
+
+      // let every task left open reach its dueTime and get expired before reading the lag
+      Thread.sleep(TimeUnit.SECONDS.toMillis(MAX_DUE_SECONDS + 5));
+
+      report(total, ctx.getBean(MeterRegistry.class));
+
+      assertThat(total.latencies.get(Endpoint.GARDEN)).isNotEmpty();
+      assertThat(total.tasksCreated).isGreaterThan(total.tasksCompleted);
+      JdbcTemplate jdbc = ctx.getBean(JdbcTemplate.class);
+      Long overdueOpen = jdbc.queryForObject("select count(*) from tasks where completed = false "
+          + "and expired = false and time_bomb_enabled = true and due_time < ?", Long.class,
+          LocalDateTime.now().minusSeconds(5));
+      assertThat(overdueOpen).as("overdue tasks never expired").isZero();
+    }
+  }
+
+  // Users go straight into the database with one shared hash and get their tokens minted
+  // directly: thousands of BCrypt logins would measure the hashing pool, not the garden.
+  private List<String> seedUsers(ConfigurableApplicationContext ctx) {
+    String hash = ctx.getBean(BCryptPasswordEncoder.class).encode("Password123!");
+    List<User> users = new ArrayList<>();
+    for (int i = 0; i < USERS; i++) {
+      users.add(User.builder()
+          .username("sim_" + i)
+          .email("sim-" + i + "@load.test")
+          .password(hash)
+          .createdAt(LocalDateTime.now())
+          .build());
+    }
+    JWTUtil jwt = ctx.getBean(JWTUtil.class);
+    return ctx.getBean(UserRepository.class).saveAll(users).stream()
+        .map(user -> jwt.generateToken(user.getId()))
+        .toList();
+  }
+
+  private Stats simulateUser(String base, String token, long startAt, long measureFrom, long deadline)
+      throws InterruptedException {
+    Stats stats = new Stats();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    ArrayDeque<PendingCompletion> toComplete = new ArrayDeque<>();
+    Long syncVersion = null;
+
+    TimeUnit.NANOSECONDS.sleep(Math.max(0, startAt - System.nanoTime()));
+    while (System.nanoTime() < deadline) {
+      // exponential think time, so arrivals look like independent users
+      Thread.sleep((long) (-THINK_MS * Math.log(1 - random.nextDouble())));
+      boolean measured = System.nanoTime() >= measureFrom;
+
+      PendingCompletion due = toComplete.peekFirst();
+      if (due != null && due.atNanos() <= System.nanoTime()) {
+        toComplete.pollFirst();
+        if (call(stats, measured, Endpoint.COMPLETE_TASK,
+            request(base + "/tasks/" + due.taskId() + "/complete", token)
+                .PUT(HttpRequest.BodyPublishers.noBody())) != null) {
+          stats.tasksCompleted++;
+        }
+        continue;
+      }
+
+      double roll = random.nextDouble();
+      if (roll < 0.2) {
+        int dueIn = random.nextInt(MIN_DUE_SECONDS, MAX_DUE_SECONDS + 1);
+        String body = "{\"title\":\"sim task\",\"dueTime\":\""
+            + LocalDateTime.now().plusSeconds(dueIn).truncatedTo(ChronoUnit.SECONDS) + "\"}";
+        JsonNode created = call(stats, measured, Endpoint.CREATE_TASK,
+            request(base + "/tasks", token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+        if (created != null) {
+          stats.tasksCreated++;
+          // about half get done somewhere before their deadline, the rest expire
+          if (random.nextBoolean()) {
+            long doneIn = random.nextLong(TimeUnit.SECONDS.toNanos(dueIn - 2));
+            addInOrder(toComplete, new PendingCompletion(created.get("id").asLong(),
+                System.nanoTime() + doneIn));
+          }
+        }
+      } else if (roll < 0.3) {
+        JsonNode changes = call(stats, measured, Endpoint.SYNC,
+            request(base + "/sync" + (syncVersion == null ? "" : "?since=" + syncVersion), token).GET());
+        if (changes != null) {
+          syncVersion = changes.get("version").asLong();
+        }
+      } else {
+        call(stats, measured, Endpoint.GARDEN, request(base + "/garden", token).GET());
+      }
+    }
+    return stats;
+  }
+
+  private static void addInOrder(ArrayDeque<PendingCompletion> queue, PendingCompletion next) {
+    List<PendingCompletion> all = new ArrayList<>(queue);
+    all.add(next);
+    all.sort((a, b) -> Long.compare(a.atNanos(), b.atNanos()));
+    queue.clear();
+    queue.addAll(all);
+  }
+
+  private HttpRequest.Builder request(String url, String token) {
+    return HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token);
+  }
+
+  // the parsed body on 2xx, null otherwise; 429/503 count as shed, anything else as errors
+  private JsonNode call(Stats stats, boolean measured, Endpoint endpoint, HttpRequest.Builder request)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    int status;
+    String body = null;
+    try {
+      HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+      status = response.statusCode();
+      body = response.body();
+    } catch (IOException e) {
+      status = -1;
+    }
+    long elapsed = System.nanoTime() - start;
+
+    int outcome = status >= 200 && status < 300 ? 0 : status == 429 || status == 503 ? 1 : 2;
+    if (measured) {
+      stats.latencies.get(endpoint).add(elapsed);
+      stats.outcomes.get(endpoint)[outcome]++;
+    }
+    if (outcome != 0) {
+      return null;
+    }
+    try {
+      return body == null || body.isEmpty() ? objectMapper.nullNode() : objectMapper.readTree(body);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void report(Stats total, MeterRegistry registry) throws IOException {
+    StringBuilder csv = new StringBuilder(
+        "metric,users,seconds,requests,rps,ok,rejected,errors,p50_ms,p99_ms,p999_ms,max_ms\n");
+    for (Endpoint e : Endpoint.values()) {
+      long[] sorted = total.latencies.get(e).stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(sorted);
+      long[] outcomes = total.outcomes.get(e);
+      csv.append(String.format("%s,%d,%d,%d,%.1f,%d,%d,%d,%.2f,%.2f,%.2f,%.2f%n", e.label, USERS, SECONDS,
+          sorted.length, (double) sorted.length / SECONDS, outcomes[0], outcomes[1], outcomes[2],
+          percentileMs(sorted, 0.50), percentileMs(sorted, 0.99), percentileMs(sorted, 0.999),
+          sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1_000_000.0));
+    }
+
+    // server-side: dueTime to expiry, as recorded by TaskExpiryService
+    for (Timer lag : registry.find("tasks.expiry.lag").timers()) {
+      double[] p = new double[3];
+      for (ValueAtPercentile v : lag.takeSnapshot().percentileValues()) {
+        int i = v.percentile() == 0.5 ? 0 : v.percentile() == 0.99 ? 1 : v.percentile() == 0.999 ? 2 : -1;
+        if (i >= 0) {
+          p[i] = v.value(TimeUnit.MILLISECONDS);
+        }
+      }
+      csv.append(String.format("expiry lag (%s),%d,%d,%d,,,,,%.2f,%.2f,%.2f,%.2f%n",
+          lag.getId().getTag("path"), USERS, SECONDS, lag.count(), p[0], p[1], p[2],
+          lag.max(TimeUnit.MILLISECONDS)));
+    }
+
+    System.out.print("[garden-load]\n" + csv);
+    System.out.printf("[garden-load] tasks created %d, completed %d%n", total.tasksCreated, total.tasksCompleted);
+    Files.createDirectories(REPORT.getParent());
+    Files.writeString(REPORT, csv);
+  }
+
+  private static double percentileMs(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+    return sorted[Math.max(0, idx)] / 1_000_000.0;
+  }
+}
@@ -0,0 +1,242 @@
+package com.lelin.tomato;
+
+import com.lelin.tomato.repository.PunishmentRepository;
+import com.lelin.tomato.repository.TaskRepository;
+import com.lelin.tomato.repository.TomatoDailyRepository;
+import com.lelin.tomato.repository.TomatoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Seeds the tasks, punishments and tomatoes tables up to each configured scale,
+ * calls every hot repository finder, EXPLAINs the SQL it actually sent (captured
+ * by CapturedSql, values bound) and fails if MySQL would answer any of them with a
+ * full table scan. Per-query latency is written to target/query-plan-latency.csv
+ * for capacity planning.
+ *
+ * Runs at 10k rows by default. For the full sweep:
+ *   mvn test -Dtest=QueryPlanRegressionTest -Dqueryplan.scales=10000,1000000,10000000
+ */
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("test")
+class QueryPlanRegressionTest {
+
+  @Container
+  static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+      .withDatabaseName("tomato_test")
+      .withUsername("test")
+      .withPassword("test")
+      .withUrlParam("rewriteBatchedStatements", "true")
+      .withUrlParam("queryInterceptors", CapturedSql.class.getName());
+
+  @DynamicPropertySource
+  static void props(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", mysql::getJdbcUrl);
+    registry.add("spring.datasource.username", mysql::getUsername);
+    registry.add("spring.datasource.password", mysql::getPassword);
+    // keep the scheduler from expiring the seeded backlog mid-measurement
+    registry.add("app.scheduler.reconcile-ms", () -> "3600000");
+  }
+
+  private static final List<Integer> SCALES = Arrays.stream(
+          System.getProperty("queryplan.scales", "10000").split(","))
+      .map(String::trim)
+      .map(Integer::parseInt)
+      .toList();
+
+  private static final int SEED_BATCH = 10_000;
+  private static final int TIMED_RUNS = 20;
+  private static final Path REPORT = Path.of("target", "query-plan-latency.csv");
+
+  @Autowired JdbcTemplate jdbc;
+  @Autowired TaskRepository taskRepository;
+  @Autowired PunishmentRepository punishmentRepository;
+  @Autowired TomatoRepository tomatoRepository;
+  @Autowired TomatoDailyRepository tomatoDailyRepository;
+
+  private record HotQuery(String name, String table, Runnable call) {
+  }
+
+  private List<HotQuery> hotQueries(long userId, long taskId, long sinceVersion) {
+    LocalDateTime now = LocalDateTime.now();
+    return List.of(
+        new HotQuery("TaskRepository.findByUserId", "tasks",
+            () -> taskRepository.findByUserId(userId)),
+        new HotQuery("TaskRepository.findByUserIdAndCompletedFalse", "tasks",
+            () -> taskRepository.findByUserIdAndCompletedFalse(userId)),
+        new HotQuery("TaskRepository.findPageNewest (open)", "tasks",
+            () -> taskRepository.findPageNewest(userId, Long.MAX_VALUE, false, null, null,
+                null, null, PageRequest.of(0, 51))),
+        new HotQuery("TaskRepository.findPageByDue", "tasks",
+            () -> taskRepository.findPageByDue(userId, LocalDateTime.of(1000, 1, 1, 0, 0), 0L,
+                null, null, null, null, null, PageRequest.of(0, 51))),
+        new HotQuery("TaskRepository.findExpiryChunk", "tasks",
+            () -> taskRepository.findExpiryChunk(now, 0L, 1, Set.of(0), PageRequest.of(0, 500))),
+        new HotQuery("TaskRepository.findUpcomingInPartitions", "tasks",
+            () -> taskRepository.findUpcomingInPartitions(now, now.plusMinutes(60), 1, Set.of(0))),
+        new HotQuery("PunishmentRepository.findByUserId", "punishments",
+            () -> punishmentRepository.findByUserId(userId)),
+        new HotQuery("PunishmentRepository.findByUserIdAndResolvedFalseOrderByCreatedAtAsc", "punishments",
+            () -> punishmentRepository.findByUserIdAndResolvedFalseOrderByCreatedAtAsc(userId)),
+        new HotQuery("PunishmentRepository.findFirstByUserIdAndResolvedFalseOrderByCreatedAtAsc", "punishments",
+            () -> punishmentRepository.findFirstByUserIdAndResolvedFalseOrderByCreatedAtAsc(userId)),
+        new HotQuery("TomatoRepository.countByUserId", "tomatoes",
+            () -> tomatoRepository.countByUserId(userId)),
+        new HotQuery("TomatoRepository.findByUserIdOrderByTimestampDesc", "tomatoes",
+            () -> tomatoRepository.findByUserIdOrderByTimestampDesc(userId)),
+        new HotQuery("TomatoDailyRepository.findRange", "tomato_daily",
+            () -> tomatoDailyRepository.findRange(userId, now.toLocalDate().minusDays(90),
+                now.toLocalDate())),
+        new HotQuery("TomatoRepository.countByUserIdAndTaskId", "tomatoes",
+            () -> tomatoRepository.countByUserIdAndTaskId(userId, taskId)),
+        new HotQuery("TaskRepository.findChangedSince", "tasks",
+            () -> taskRepository.findChangedSince(userId, sinceVersion)),
+        new HotQuery("TomatoRepository.findChangedSince", "tomatoes",
+            () -> tomatoRepository.findChangedSince(userId, sinceVersion))
+    );
+  }
+
+  @Test
+  void hot_queries_use_indexes_at_every_scale() throws IOException {
+    Files.createDirectories(REPORT.getParent());
+    Files.writeString(REPORT, "rows,query,avg_micros,max_micros\n");
+
+    int seeded = 0;
+    for (int scale : SCALES) {
+      seed(seeded, scale);
+      seeded = scale;
+      jdbc.execute("analyze table tasks, punishments, tomatoes, tomato_daily");
+
+      int users = usersFor(scale);
+      long probeUser = users / 2 + 1;
+
+      // seeded rows carry change_version = row number, so this syncs the newer half
+      for (HotQuery q : hotQueries(probeUser, probeUser, scale / 2)) {
+        assertUsesIndex(scale, q);
+        recordLatency(scale, q);
+      }
+    }
+  }
+
+  private void assertUsesIndex(int scale, HotQuery q) {
+    List<String> sent = CapturedSql.during(q.call()).stream()
+        .filter(sql -> sql.toLowerCase().startsWith("select")
+            && sql.toLowerCase().contains(" from " + q.table() + " "))
+        .toList();
+    assertThat(sent).as("%s sent no select on %s", q.name(), q.table()).isNotEmpty();
+
+    for (String sql : sent) {
+      List<Map<String, Object>> plan = jdbc.queryForList("explain " + sql);
+      // Hibernate aliases every table, so check each row that reads one
+      for (Map<String, Object> row : plan) {
+        if (row.get("table") == null) {
+          continue;
+        }
+        assertThat(row.get("type"))
+            .as("%s at %d rows does a full scan: %s%n%s", q.name(), scale, row, sql)
+            .isNotEqualTo("ALL");
+        assertThat(row.get("key"))
+            .as("%s at %d rows uses no index: %s%n%s", q.name(), scale, row, sql)
+            .isNotNull();
+      }
+    }
+  }
+
+  private void recordLatency(int scale, HotQuery q) throws IOException {
+    for (int i = 0; i < 3; i++) {
+      q.call().run(); // warm up
+    }
+
+    long total = 0;
+    long max = 0;
+    for (int i = 0; i < TIMED_RUNS; i++) {
+      long start = System.nanoTime();
+      q.call().run();
+      long micros = (System.nanoTime() - start) / 1_000;
+      total += micros;
+      max = Math.max(max, micros);
+    }
+
+    String line = scale + "," + q.name() + "," + (total / TIMED_RUNS) + "," + max;
+    Files.writeString(REPORT, line + "\n", StandardOpenOption.APPEND);
+  }
+
+  // roughly a hundred rows of each kind per user
+  private int usersFor(int scale) {
+    return Math.max(100, scale / 100);
+  }
+
+  // Tops every table up from `from` to `to` rows. Most tasks are completed,
+  // about 1% are overdue time bombs and 5% come due within the next hour.
+  private void seed(int from, int to) {
+    int users = usersFor(to);
+    LocalDateTime now = LocalDateTime.now();
+
+    for (int start = from; start < to; start += SEED_BATCH) {
+      int end = Math.min(to, start + SEED_BATCH);
+      List<Object[]> tasks = new ArrayList<>();
+      List<Object[]> punishments = new ArrayList<>();
+      List<Object[]> tomatoes = new ArrayList<>();
+
+      for (int i = start; i < end; i++) {
+        long userId = i % users + 1;
+        int bucket = i % 100;
+        boolean overdue = bucket == 0;
+        boolean upcoming = bucket >= 1 && bucket <= 5;
+        boolean completed = bucket >= 20;
+        LocalDateTime due = overdue ? now.minusMinutes(5 + i % 50)
+            : upcoming ? now.plusMinutes(1 + i % 50)
+            : now.plusDays(1 + i % 30);
+
+        tasks.add(new Object[] {
+            "task " + i, Timestamp.valueOf(now.minusDays(i % 365)), Timestamp.valueOf(due),
+            completed, !completed, userId, (long) i
+        });
+        punishments.add(new Object[] {
+            userId, (long) i + 1, Timestamp.valueOf(now.minusHours(i % 5000)), i % 10 == 0, (long) i
+        });
+        tomatoes.add(new Object[] {
+            userId, (long) i + 1, Timestamp.valueOf(now.minusMinutes(i % 500_000)), (long) i
+        });
+      }
+
+      jdbc.batchUpdate("insert into tasks (title, created_at, due_time, completed, time_bomb_enabled, "
+          + "user_id, change_version, priority, expired, tomatoes_earned, version) "
+          + "values (?, ?, ?, ?, ?, ?, ?, 'MEDIUM', false, 0, 0)", tasks);
+      jdbc.batchUpdate("insert into punishments (user_id, task_id, created_at, resolved, change_version, "
+          + "type, version) values (?, ?, ?, ?, ?, 'WEEDS', 0)", punishments);
+      jdbc.batchUpdate("insert into tomatoes (user_id, task_id, timestamp, change_version) "
+          + "values (?, ?, ?, ?)", tomatoes);
+    }
+
+    // the daily rollup is derived, so rebuild it from scratch for the new scale
+    jdbc.update("delete from tomato_daily");
+    jdbc.update("insert into tomato_daily (user_id, bucket_day, tomatoes) "
+        + "select user_id, cast(timestamp as date), count(*) from tomatoes "
+        + "group by user_id, cast(timestamp as date)");
+  }
+}
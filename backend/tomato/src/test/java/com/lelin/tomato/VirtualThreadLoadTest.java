@@ -0,0 +1,187 @@
+package com.lelin.tomato;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the same blocking-JDBC workload (80% GET /garden, 20% POST /tasks) against
+ * the app on Tomcat's platform-thread pool and then on virtual threads, and
+ * reports throughput and p50/p99 latency for each to target/virtual-thread-load.csv.
+ *
+ * Opt-in, since it takes a minute or two:
+ *   mvn test -Dtest=VirtualThreadLoadTest -Dloadtest=true
+ *   (-Dloadtest.clients=400 -Dloadtest.seconds=20 -Dloadtest.users=50)
+ */
+@Testcontainers
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class VirtualThreadLoadTest {
+
+  @Container
+  static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+      .withDatabaseName("tomato_test")
+      .withUsername("test")
+      .withPassword("test")
+      .withUrlParam("rewriteBatchedStatements", "true");
+
+  private static final int CLIENTS = Integer.getInteger("loadtest.clients", 400);
+  private static final int SECONDS = Integer.getInteger("loadtest.seconds", 20);
+  private static final int USERS = Integer.getInteger("loadtest.users", 50);
+  private static final int WARMUP_SECONDS = 5;
+  private static final Path REPORT = Path.of("target", "virtual-thread-load.csv");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final HttpClient http = HttpClient.newBuilder()
+      .executor(Executors.newVirtualThreadPerTaskExecutor())
+      .build();
+
+  private record Result(String mode, long requests, long errors, double rps, double p50Ms, double p99Ms) {
+  }
+
+  @Test
+  void compare_platform_and_virtual_threads() throws Exception {
+    Files.createDirectories(REPORT.getParent());
+    Files.writeString(REPORT, "mode,clients,seconds,requests,errors,rps,p50_ms,p99_ms\n");
+
+    Result platform = run("platform", false);
+    Result virtual = run("virtual", true);
+
+    assertThat(platform.requests()).isPositive();
+    assertThat(virtual.requests()).isPositive();
+    // the bounded DataSource queues excess requests rather than failing them at this load
+    assertThat(virtual.errors()).isZero();
+  }
+
+  private Result run(String mode, boolean virtualThreads) throws Exception {
+    try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(TomatoApplication.class)
+        .profiles("test")
+        .run(
+            "--server.port=0",
+            "--spring.datasource.url=" + mysql.getJdbcUrl(),
+            "--spring.datasource.username=" + mysql.getUsername(),
+            "--spring.datasource.password=" + mysql.getPassword(),
+            "--jwt.secret=12345678901234567890123456789012",
+            "--jwt.expiration=86400000",
+            "--spring.threads.virtual.enabled=" + virtualThreads,
+            // measuring the thread model, not admission control
+            "--app.ratelimit.enabled=false",
+            "--logging.level.org.springframework.security=INFO")) {
+      String base = "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port");
+      List<String> tokens = new ArrayList<>();
+      for (int i = 0; i < USERS; i++) {
+        tokens.add(registerAndLogin(base, mode + "-" + i));
+      }
+
+      drive(base, tokens, WARMUP_SECONDS);
+      Result result = summarize(mode, drive(base, tokens, SECONDS));
+
+      String line = String.format("%s,%d,%d,%d,%d,%.1f,%.2f,%.2f", mode, CLIENTS, SECONDS,
+          result.requests(), result.errors(), result.rps(), result.p50Ms(), result.p99Ms());
+      System.out.println("[virtual-thread-load] " + line);
+      Files.writeString(REPORT, line + "\n", StandardOpenOption.APPEND);
+      return result;
+    }
+  }
+
+  private record Samples(long[] latencies, long errors, int seconds) {
+  }
+
+  // CLIENTS closed-loop clients, each on its own virtual thread, for the given time
+  private Samples drive(String base, List<String> tokens, int seconds) throws Exception {
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    AtomicLong errors = new AtomicLong();
+    List<Future<List<Long>>> clients = new ArrayList<>();
+
+    try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int c = 0; c < CLIENTS; c++) {
+        String token = tokens.get(c % tokens.size());
+        int client = c;
+        clients.add(pool.submit(() -> {
+          List<Long> latencies = new ArrayList<>();
+          for (long i = client; System.nanoTime() < deadline; i++) {
+            HttpRequest request = i % 5 == 0
+                ? authed(base + "/tasks", token)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"load " + i + "\"}"))
+                    .build()
+                : authed(base + "/garden", token).GET().build();
+
+            long start = System.nanoTime();
+            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            latencies.add(System.nanoTime() - start);
+            if (response.statusCode() >= 400) {
+              errors.incrementAndGet();
+            }
+          }
+          return latencies;
+        }));
+      }
+
+      List<Long> all = new ArrayList<>();
+      for (Future<List<Long>> f : clients) {
+        all.addAll(f.get());
+      }
+      return new Samples(all.stream().mapToLong(Long::longValue).toArray(), errors.get(), seconds);
+    }
+  }
+
+  private Result summarize(String mode, Samples samples) {
+    long[] sorted = samples.latencies().clone();
+    Arrays.sort(sorted);
+    return new Result(mode, sorted.length, samples.errors(),
+        (double) sorted.length / samples.seconds(),
+        percentileMs(sorted, 0.50), percentileMs(sorted, 0.99));
+  }
+
+  private static double percentileMs(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+    return sorted[Math.max(0, idx)] / 1_000_000.0;
+  }
+
+  private HttpRequest.Builder authed(String url, String token) {
+    return HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token);
+  }
+
+  private String registerAndLogin(String base, String name) throws IOException, InterruptedException {
+    String email = name + "@load.test";
+    post(base + "/auth/register", Map.of("email", email, "username", name.replace('-', '_'),
+        "password", "Password123!"));
+    String body = post(base + "/auth/login", Map.of("email", email, "password", "Password123!"));
+    return objectMapper.readTree(body).get("token").asText();
+  }
+
+  private String post(String url, Map<String, String> json) throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(json)))
+        .build();
+    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+    assertThat(response.statusCode()).as("%s -> %s", url, response.body()).isEqualTo(200);
+    return response.body();
+  }
+}
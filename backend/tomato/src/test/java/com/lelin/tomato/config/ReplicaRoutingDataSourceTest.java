@@ -0,0 +1,118 @@
+package com.lelin.tomato.config;
+
+import com.lelin.tomato.security.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Two in-memory H2 databases stand in for the primary and the replica; each says
+// which one it is, and "replication" of the heartbeat is done by hand.
+class ReplicaRoutingDataSourceTest {
+
+  private final DataSource primary = database("primary");
+  private final DataSource replica = database("replica");
+  private final ReadYourWrites readYourWrites = new ReadYourWrites("jdbc:replica", 60_000);
+  private final ReplicaLagMonitor lagMonitor = new ReplicaLagMonitor(primary, replica, 1000, 2000);
+  private final ReplicaRoutingDataSource routing =
+      new ReplicaRoutingDataSource(primary, replica, readYourWrites, lagMonitor);
+  private final JdbcTemplate jdbc = new JdbcTemplate(routing);
+  private final TransactionTemplate readWriteTx = new TransactionTemplate(new DataSourceTransactionManager(routing));
+  private final TransactionTemplate readOnlyTx = new TransactionTemplate(new DataSourceTransactionManager(routing));
+
+  @BeforeEach
+  void setUp() {
+    readOnlyTx.setReadOnly(true);
+    replicaStampedMsAgo(0);
+    lagMonitor.check();
+  }
+
+  @AfterEach
+  void clearUser() {
+    SecurityContextHolder.clearContext();
+  }
+
+  private static DataSource database(String name) {
+    DriverManagerDataSource dataSource = new DriverManagerDataSource(
+        "jdbc:h2:mem:routing_" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("create table if not exists whoami (name varchar(16))");
+    jdbc.execute("delete from whoami");
+    jdbc.update("insert into whoami values (?)", name);
+    jdbc.execute("create table if not exists replica_heartbeat (id int primary key, beat_at_ms bigint not null)");
+    jdbc.execute("delete from replica_heartbeat");
+    return dataSource;
+  }
+
+  private void replicaStampedMsAgo(long ms) {
+    JdbcTemplate jdbc = new JdbcTemplate(replica);
+    jdbc.execute("delete from replica_heartbeat");
+    jdbc.update("insert into replica_heartbeat values (1, ?)", System.currentTimeMillis() - ms);
+  }
+
+  private String whoami() {
+    return jdbc.queryForObject("select name from whoami", String.class);
+  }
+
+  private String whoamiIn(TransactionTemplate tx) {
+    return tx.execute(status -> whoami());
+  }
+
+  private void signIn(long userId) {
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+        new AuthenticatedUser(userId, "user" + userId), null, AuthenticatedUser.AUTHORITIES));
+  }
+
+  @Test
+  void read_only_transactions_go_to_the_replica_and_everything_else_to_the_primary() {
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("replica");
+    assertThat(whoamiIn(readWriteTx)).isEqualTo("primary");
+    assertThat(whoami()).isEqualTo("primary");
+    // the heartbeat goes to the primary
+    assertThat(new JdbcTemplate(primary).queryForList("select id from replica_heartbeat", Integer.class))
+        .containsExactly(1);
+    assertThat(routing.getToReplica()).isEqualTo(1);
+  }
+
+  @Test
+  void a_users_reads_stay_on_the_primary_right_after_their_own_write() {
+    readYourWrites.wrote(List.of(7L));
+
+    signIn(7);
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("primary");
+    signIn(8);
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("replica");
+    assertThat(routing.getStickyToPrimary()).isEqualTo(1);
+  }
+
+  @Test
+  void a_lagging_or_unreadable_replica_is_skipped() {
+    replicaStampedMsAgo(10_000);
+    lagMonitor.check();
+
+    assertThat(lagMonitor.getLagMs()).isGreaterThanOrEqualTo(9_000);
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("primary");
+
+    new JdbcTemplate(replica).execute("delete from replica_heartbeat");
+    lagMonitor.check();
+
+    assertThat(lagMonitor.getLagMs()).isEqualTo(Long.MAX_VALUE);
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("primary");
+
+    replicaStampedMsAgo(0);
+    lagMonitor.check();
+
+    assertThat(whoamiIn(readOnlyTx)).isEqualTo("replica");
+    assertThat(routing.getLaggingToPrimary()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,53 @@
+package com.lelin.tomato.security;
+
+import com.lelin.tomato.config.GlobalExceptionHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CurrentUserArgumentResolverTest {
+
+  @RestController
+  static class WhoAmI {
+    @GetMapping("/whoami")
+    String whoami(AuthenticatedUser user) {
+      return user.getUsername();
+    }
+  }
+
+  private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new WhoAmI())
+      .setCustomArgumentResolvers(new CurrentUserArgumentResolver())
+      .setControllerAdvice(new GlobalExceptionHandler())
+      .build();
+
+  @AfterEach
+  void clearContext() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  void injects_the_authenticated_user() throws Exception {
+    AuthenticatedUser user = new AuthenticatedUser(7L, "alice");
+    SecurityContextHolder.getContext().setAuthentication(
+        new UsernamePasswordAuthenticationToken(user, null, AuthenticatedUser.AUTHORITIES));
+
+    mockMvc.perform(get("/whoami"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("alice"));
+  }
+
+  @Test
+  void no_authenticated_user_is_a_401_not_a_400() throws Exception {
+    mockMvc.perform(get("/whoami"))
+        .andExpect(status().isUnauthorized());
+  }
+}
@@ -0,0 +1,46 @@
+package com.lelin.tomato.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JWTUtilTest {
+
+  private JWTUtil jwtUtil(long expirationMs) {
+    JWTUtil util = new JWTUtil();
+    ReflectionTestUtils.setField(util, "SECRET", "12345678901234567890123456789012");
+    ReflectionTestUtils.setField(util, "EXPIRATION", expirationMs);
+    ReflectionTestUtils.setField(util, "tokenCacheSize", 100L);
+    ReflectionTestUtils.setField(util, "tokenCacheTtlSeconds", 60L);
+    util.init();
+    return util;
+  }
+
+  @Test
+  void verify_returns_claims_for_a_freshly_issued_token() {
+    JWTUtil util = jwtUtil(60_000);
+    String token = util.generateToken(42L);
+
+    assertThat(util.verify(token).getSubject()).isEqualTo("42");
+    // second call is served from the verified-token cache
+    assertThat(util.verify(token).getSubject()).isEqualTo("42");
+    assertThat(util.extractUserId(token)).isEqualTo(42L);
+  }
+
+  @Test
+  void verify_rejects_tampered_expired_and_missing_tokens() {
+    JWTUtil util = jwtUtil(60_000);
+    String token = util.generateToken(42L);
+    String tampered = token.substring(0, token.length() - 2) + "xx";
+
+    assertThat(util.verify(tampered)).isNull();
+    assertThat(util.verify(null)).isNull();
+    assertThat(util.validateToken("not-a-jwt")).isFalse();
+    assertThatThrownBy(() -> util.extractUserId(tampered)).isInstanceOf(RuntimeException.class);
+
+    JWTUtil expiring = jwtUtil(-1_000);
+    assertThat(expiring.verify(expiring.generateToken(7L))).isNull();
+  }
+}
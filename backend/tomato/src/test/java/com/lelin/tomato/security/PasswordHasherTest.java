@@ -0,0 +1,99 @@
+package com.lelin.tomato.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  // cheap BCrypt whose matches() can be held open to fill the pool
+  private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4) {
+    @Override
+    public boolean matches(CharSequence raw, String encoded) {
+      if ("block".contentEquals(raw)) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return false;
+      }
+      return super.matches(raw, encoded);
+    }
+  };
+
+  private PasswordHasher hasher;
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    hasher.shutdown();
+  }
+
+  private static void waitFor(BooleanSupplier condition) {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.currentTimeMillis()).as("timed out waiting").isLessThan(deadline);
+      Thread.onSpinWait();
+    }
+  }
+
+  @Test
+  void hashes_and_records_latency() {
+    hasher = new PasswordHasher(encoder, registry, 1, 4, 5_000);
+
+    String hash = hasher.encode("secret");
+
+    assertThat(hasher.matches("secret", hash)).isTrue();
+    assertThat(hasher.matches("wrong", hash)).isFalse();
+    assertThat(registry.get("auth.hashing.duration").tag("op", "encode").timer().count()).isEqualTo(1);
+    assertThat(registry.get("auth.hashing.duration").tag("op", "matches").timer().count()).isEqualTo(2);
+    assertThat(registry.get("auth.hashing.queue.depth").gauge().value()).isZero();
+  }
+
+  @Test
+  void rejects_fast_when_the_queue_is_full() {
+    hasher = new PasswordHasher(encoder, registry, 1, 1, 5_000);
+
+    // one running, one queued
+    CompletableFuture.runAsync(() -> hasher.matches("block", "x"));
+    waitFor(() -> hasher.getActiveCount() == 1);
+    CompletableFuture.runAsync(() -> hasher.matches("block", "x"));
+    waitFor(() -> hasher.getQueueDepth() == 1);
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> hasher.matches("secret", "x"))
+        .isInstanceOf(RejectedExecutionException.class);
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+    assertThat(registry.get("auth.hashing.rejected").tag("reason", "queue_full").counter().count())
+        .isEqualTo(1);
+    assertThat(registry.get("auth.hashing.queue.depth").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void gives_up_after_the_timeout_and_frees_the_queue_slot() {
+    hasher = new PasswordHasher(encoder, registry, 1, 1, 200);
+
+    CompletableFuture.runAsync(() -> hasher.matches("block", "x"));
+    waitFor(() -> hasher.getActiveCount() == 1);
+
+    assertThatThrownBy(() -> hasher.encode("secret"))
+        .isInstanceOf(RejectedExecutionException.class);
+    assertThat(hasher.getQueueDepth()).isZero();
+    // the caller stuck behind the blocked job gave up too
+    waitFor(() -> registry.get("auth.hashing.rejected").tag("reason", "timeout").counter().count() == 2);
+  }
+}
@@ -0,0 +1,47 @@
+package com.lelin.tomato.security;
+
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PrincipalCacheTest {
+
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final PrincipalCache cache = new PrincipalCache(userRepository, 100, 300);
+
+  private User user(long id, String username) {
+    return User.builder().id(id).username(username).email(username + "@example.com").build();
+  }
+
+  @Test
+  void loads_each_user_once_until_invalidated() {
+    when(userRepository.findById(1L))
+        .thenReturn(Optional.of(user(1, "alice")))
+        .thenReturn(Optional.of(user(1, "alice2")));
+
+    assertThat(cache.get(1L).getUsername()).isEqualTo("alice");
+    assertThat(cache.get(1L).getUsername()).isEqualTo("alice");
+    verify(userRepository, times(1)).findById(1L);
+
+    cache.invalidate(1L);
+
+    assertThat(cache.get(1L).getUsername()).isEqualTo("alice2");
+    assertThat(cache.get(1L).getName()).isEqualTo("1");
+    verify(userRepository, times(2)).findById(1L);
+  }
+
+  @Test
+  void missing_users_are_not_cached() {
+    when(userRepository.findById(2L))
+        .thenReturn(Optional.empty())
+        .thenReturn(Optional.of(user(2, "bob")));
+
+    assertThat(cache.get(2L)).isNull();
+    assertThat(cache.get(2L)).isNotNull();
+  }
+}
@@ -0,0 +1,198 @@
+package com.lelin.tomato.security;
+
+import com.lelin.tomato.model.User;
+import com.lelin.tomato.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimitFilterTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  // reads 1/s burst 3, writes 1/s burst 1, auth 1/s burst 2; 10.0.0.9 is our proxy
+  private RateLimitFilter filter(int maxConcurrent) {
+    return new RateLimitFilter(registry, true, 1, 3, 1, 1, 1, 2, 600, 1000, maxConcurrent, 10, "10.0.0.9");
+  }
+
+  @AfterEach
+  void clearContext() {
+    SecurityContextHolder.clearContext();
+  }
+
+  private void authenticate(long userId) {
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+        new AuthenticatedUser(userId, "u" + userId), null, AuthenticatedUser.AUTHORITIES));
+  }
+
+  private MockHttpServletResponse send(RateLimitFilter filter, String method, String path, String ip)
+      throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+    request.setServletPath(path);
+    request.setRemoteAddr(ip);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, new MockFilterChain());
+    return response;
+  }
+
+  @Test
+  void reads_and_writes_have_separate_per_user_budgets() throws Exception {
+    RateLimitFilter filter = filter(10);
+    authenticate(1);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(send(filter, "GET", "/tasks", "10.0.0.1").getStatus()).isEqualTo(200);
+    }
+    MockHttpServletResponse limited = send(filter, "GET", "/tasks", "10.0.0.1");
+    assertThat(limited.getStatus()).isEqualTo(429);
+    assertThat(limited.getHeader("Retry-After")).isEqualTo("1");
+
+    // the write bucket is untouched by reads
+    assertThat(send(filter, "POST", "/tasks", "10.0.0.1").getStatus()).isEqualTo(200);
+    assertThat(send(filter, "POST", "/tasks", "10.0.0.1").getStatus()).isEqualTo(429);
+
+    // and another user has their own
+    authenticate(2);
+    assertThat(send(filter, "GET", "/tasks", "10.0.0.1").getStatus()).isEqualTo(200);
+
+    assertThat(registry.get("http.ratelimit.rejected").tag("reason", "user_read").counter().count())
+        .isEqualTo(1);
+    assertThat(registry.get("http.ratelimit.rejected").tag("reason", "user_write").counter().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void auth_is_limited_per_ip() throws Exception {
+    RateLimitFilter filter = filter(10);
+
+    assertThat(send(filter, "POST", "/auth/login", "10.0.0.1").getStatus()).isEqualTo(200);
+    assertThat(send(filter, "POST", "/auth/login", "10.0.0.1").getStatus()).isEqualTo(200);
+    assertThat(send(filter, "POST", "/auth/login", "10.0.0.1").getStatus()).isEqualTo(429);
+    assertThat(send(filter, "POST", "/auth/login", "10.0.0.2").getStatus()).isEqualTo(200);
+  }
+
+  @Test
+  void behind_the_proxy_auth_is_limited_per_forwarded_client() throws Exception {
+    RateLimitFilter filter = filter(10);
+
+    for (String client : new String[] {"203.0.113.1", "203.0.113.2", "203.0.113.3"}) {
+      MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/login");
+      request.setServletPath("/auth/login");
+      request.setRemoteAddr("10.0.0.9");
+      // a client-supplied hop on the left is ignored
+      request.addHeader("X-Forwarded-For", "1.2.3.4, " + client);
+      assertThat(filter.clientIp(request)).isEqualTo(client);
+      MockHttpServletResponse response = new MockHttpServletResponse();
+      filter.doFilter(request, response, new MockFilterChain());
+      assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    // from anywhere else the header is not believed
+    MockHttpServletRequest direct = new MockHttpServletRequest("POST", "/auth/login");
+    direct.setRemoteAddr("198.51.100.7");
+    direct.addHeader("X-Forwarded-For", "203.0.113.1");
+    assertThat(filter.clientIp(direct)).isEqualTo("198.51.100.7");
+  }
+
+  // through the real JWT filter, as in the security chain
+  private MockHttpServletResponse sendThroughJwt(JWTAuthenticationFilter jwt, RateLimitFilter filter,
+      String path, String token) throws Exception {
+    SecurityContextHolder.clearContext();
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+    request.setServletPath(path);
+    request.setRemoteAddr("10.0.0.9");
+    request.addHeader("X-Forwarded-For", "203.0.113.1");
+    if (token != null) {
+      request.addHeader("Authorization", "Bearer " + token);
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    jwt.doFilter(request, response, (req, res) -> filter.doFilter(req, res, new MockFilterChain()));
+    return response;
+  }
+
+  @Test
+  void me_is_a_user_read_with_a_token_and_an_ip_limited_call_without_one() throws Exception {
+    RateLimitFilter filter = filter(10);
+    JWTUtil jwtUtil = new JWTUtil();
+    ReflectionTestUtils.setField(jwtUtil, "SECRET", "12345678901234567890123456789012");
+    ReflectionTestUtils.setField(jwtUtil, "EXPIRATION", 60_000L);
+    ReflectionTestUtils.setField(jwtUtil, "tokenCacheSize", 100L);
+    ReflectionTestUtils.setField(jwtUtil, "tokenCacheTtlSeconds", 60L);
+    jwtUtil.init();
+    UserRepository users = mock(UserRepository.class);
+    when(users.findById(1L)).thenReturn(Optional.of(
+        User.builder().id(1L).username("u1").email("u1@example.com").build()));
+    JWTAuthenticationFilter jwt = new JWTAuthenticationFilter(
+        jwtUtil, new PrincipalCache(users, 100, 300), registry);
+    String token = jwtUtil.generateToken(1L);
+
+    // the user's read bucket (burst 3), not the client's auth bucket
+    for (int i = 0; i < 3; i++) {
+      assertThat(sendThroughJwt(jwt, filter, "/auth/me", token).getStatus()).isEqualTo(200);
+    }
+    assertThat(sendThroughJwt(jwt, filter, "/auth/me", token).getStatus()).isEqualTo(429);
+    assertThat(registry.get("http.ratelimit.rejected").tag("reason", "user_read").counter().count())
+        .isEqualTo(1);
+
+    // no usable token: the forwarded client's auth bucket (burst 2)
+    assertThat(sendThroughJwt(jwt, filter, "/auth/me", "not-a-jwt").getStatus()).isEqualTo(200);
+    assertThat(sendThroughJwt(jwt, filter, "/auth/me", null).getStatus()).isEqualTo(200);
+    assertThat(sendThroughJwt(jwt, filter, "/auth/me", null).getStatus()).isEqualTo(429);
+    assertThat(registry.get("http.ratelimit.rejected").tag("reason", "auth_ip").counter().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void sheds_load_past_the_concurrency_cap() throws Exception {
+    RateLimitFilter filter = filter(1);
+    authenticate(1);
+
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FilterChain slow = (req, res) -> {
+      entered.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    Thread holder = new Thread(() -> {
+      SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+          new AuthenticatedUser(2L, "u2"), null, AuthenticatedUser.AUTHORITIES));
+      MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks");
+      request.setServletPath("/tasks");
+      try {
+        filter.doFilter(request, new MockHttpServletResponse(), slow);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    holder.start();
+    assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+    MockHttpServletResponse shed = send(filter, "GET", "/tasks", "10.0.0.1");
+    assertThat(shed.getStatus()).isEqualTo(429);
+    assertThat(shed.getHeader("Retry-After")).isEqualTo("1");
+    assertThat(registry.get("http.server.requests.inflight").gauge().value()).isEqualTo(1);
+
+    release.countDown();
+    holder.join();
+    assertThat(send(filter, "GET", "/tasks", "10.0.0.1").getStatus()).isEqualTo(200);
+  }
+}
@@ -0,0 +1,34 @@
+package com.lelin.tomato.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void allows_a_burst_then_refills_at_the_rate() {
+    long now = 1_000 * SECOND;
+    TokenBucket bucket = new TokenBucket(2, 4, now);
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(bucket.tryAcquire(now)).isZero();
+    }
+    // next token in half a second
+    assertThat(bucket.tryAcquire(now)).isEqualTo(SECOND / 2);
+
+    assertThat(bucket.tryAcquire(now + SECOND / 2)).isZero();
+    assertThat(bucket.tryAcquire(now + SECOND / 2)).isPositive();
+
+    // a long idle spell refills up to the burst, not beyond
+    long later = now + 60 * SECOND;
+    for (int i = 0; i < 4; i++) {
+      assertThat(bucket.tryAcquire(later)).isZero();
+    }
+    assertThat(bucket.tryAcquire(later)).isPositive();
+  }
+}
@@ -0,0 +1,60 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.GardenLedgerState;
+import com.lelin.tomato.model.GardenLedgerEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GardenLedgerTest {
+
+  private GardenLedgerEntry entry(GardenEvent.Type type, Long taskId, int amount) {
+    return GardenLedgerEntry.builder()
+        .userId(1L)
+        .type(type)
+        .taskId(taskId)
+        .amount(amount)
+        .occurredAt(LocalDateTime.now())
+        .build();
+  }
+
+  @Test
+  void folds_tasks_tomatoes_and_punishments() {
+    GardenLedgerState state = GardenLedger.fold(new GardenLedgerState(), List.of(
+        entry(GardenEvent.Type.TASK_CREATED, 1L, 1),
+        entry(GardenEvent.Type.TASK_CREATED, 2L, 1),
+        entry(GardenEvent.Type.TASK_CREATED, 3L, 1),
+        entry(GardenEvent.Type.TASK_EXPIRED, 1L, 1),
+        entry(GardenEvent.Type.PUNISHMENT_CREATED, 1L, 1),
+        entry(GardenEvent.Type.TASK_EXPIRED, 2L, 1),
+        entry(GardenEvent.Type.PUNISHMENT_CREATED, 2L, 1),
+        entry(GardenEvent.Type.TASK_COMPLETED, 1L, 1),
+        entry(GardenEvent.Type.TOMATO_EARNED, 1L, 1),
+        entry(GardenEvent.Type.PUNISHMENT_RESOLVED, 1L, 1),
+        entry(GardenEvent.Type.TASK_UPDATED, 3L, 1),
+        entry(GardenEvent.Type.TASK_DELETED, 3L, 1)));
+
+    assertThat(state.getOpenTaskIds()).containsExactly(2L);
+    assertThat(state.getOverdueTaskIds()).containsExactly(2L);
+    assertThat(state.getTomatoCount()).isEqualTo(1);
+    assertThat(state.getActivePunishments()).isEqualTo(1);
+  }
+
+  @Test
+  void revocations_and_resolutions_never_go_below_zero() {
+    GardenLedgerState state = GardenLedger.fold(new GardenLedgerState(), List.of(
+        entry(GardenEvent.Type.TOMATO_EARNED, 1L, 1),
+        entry(GardenEvent.Type.TOMATO_REMOVED, null, 3),
+        entry(GardenEvent.Type.PUNISHMENT_RESOLVED, 1L, 1),
+        // expiring a task the ledger never saw open doesn't make it overdue
+        entry(GardenEvent.Type.TASK_EXPIRED, 9L, 1)));
+
+    assertThat(state.getTomatoCount()).isZero();
+    assertThat(state.getActivePunishments()).isZero();
+    assertThat(state.getOverdueTaskIds()).isEmpty();
+  }
+}
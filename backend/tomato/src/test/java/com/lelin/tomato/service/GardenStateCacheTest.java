@@ -0,0 +1,70 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.dto.GardenEvent;
+import com.lelin.tomato.dto.GardenSnapshot;
+import com.lelin.tomato.model.Punishment;
+import com.lelin.tomato.model.Task;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GardenStateCacheTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final GardenStateCache cache = new GardenStateCache(registry, 100, 300);
+
+  private GardenSnapshot snapshot(long tomatoCount) {
+    return GardenSnapshot.builder().tomatoCount(tomatoCount).build();
+  }
+
+  private double requests(String result) {
+    return registry.get("garden.cache.requests").tag("result", result).counter().count();
+  }
+
+  @Test
+  void serves_a_snapshot_only_at_the_change_version_it_was_read_at() {
+    assertThat(cache.get(1L, 5)).isNull();
+
+    cache.put(1L, 5, snapshot(3));
+
+    assertThat(cache.get(1L, 5).getTomatoCount()).isEqualTo(3);
+    assertThat(cache.get(1L, 6)).isNull();
+    assertThat(cache.get(2L, 5)).isNull();
+    assertThat(requests("hit")).isEqualTo(1);
+    assertThat(requests("stale")).isEqualTo(1);
+    assertThat(requests("miss")).isEqualTo(2);
+  }
+
+  @Test
+  void a_slow_load_never_replaces_a_newer_one() {
+    cache.put(1L, 7, snapshot(7));
+    cache.put(1L, 6, snapshot(6));
+
+    assertThat(cache.get(1L, 7).getTomatoCount()).isEqualTo(7);
+  }
+
+  @Test
+  void garden_events_drop_only_that_users_entry() {
+    cache.put(1L, 1, snapshot(1));
+    cache.put(2L, 1, snapshot(2));
+
+    cache.onGardenEvent(new GardenEvent(1L, GardenEvent.Type.TOMATO_EARNED, null));
+
+    assertThat(cache.get(1L, 1)).isNull();
+    assertThat(cache.get(2L, 1)).isNotNull();
+  }
+
+  @Test
+  void an_entry_weighs_one_plus_its_tasks_and_punishments() {
+    GardenSnapshot garden = GardenSnapshot.builder()
+        .tasks(List.of(new Task(), new Task(), new Task()))
+        .activePunishments(List.of(new Punishment()))
+        .build();
+
+    assertThat(GardenStateCache.weight(garden)).isEqualTo(5);
+    assertThat(GardenStateCache.weight(snapshot(0))).isEqualTo(1);
+  }
+}
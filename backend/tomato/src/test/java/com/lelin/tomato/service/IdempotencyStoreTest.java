@@ -0,0 +1,84 @@
+package com.lelin.tomato.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final IdempotencyStore store = new IdempotencyStore(new ObjectMapper(), registry, 100, 300);
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  void replays_the_first_result_for_the_same_key_and_user() {
+    var first = store.execute(1L, "k", Map.of("title", "a"), runs::incrementAndGet);
+    var again = store.execute(1L, "k", Map.of("title", "a"), runs::incrementAndGet);
+    var otherUser = store.execute(2L, "k", Map.of("title", "a"), runs::incrementAndGet);
+
+    assertThat(first.replayed()).isFalse();
+    assertThat(again.replayed()).isTrue();
+    assertThat(again.value()).isEqualTo(first.value());
+    assertThat(otherUser.replayed()).isFalse();
+    assertThat(runs).hasValue(2);
+    assertThat(registry.get("http.idempotency.replayed").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void refuses_a_key_reused_for_a_different_request() {
+    store.execute(1L, "k", Map.of("title", "a"), runs::incrementAndGet);
+
+    assertThatThrownBy(() -> store.execute(1L, "k", Map.of("title", "b"), runs::incrementAndGet))
+        .hasMessageContaining("different request");
+    assertThatThrownBy(() -> store.execute(1L, " ", Map.of(), runs::incrementAndGet))
+        .hasMessageContaining("Idempotency-Key");
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void failures_are_not_remembered() {
+    assertThatThrownBy(() -> store.execute(1L, "k", "body", () -> {
+      throw new RuntimeException("boom");
+    })).hasMessage("boom");
+
+    assertThat(store.execute(1L, "k", "body", runs::incrementAndGet).replayed()).isFalse();
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void a_concurrent_retry_waits_for_the_first_instead_of_running() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<IdempotencyStore.Outcome<Integer>> first = CompletableFuture.supplyAsync(
+        () -> store.execute(1L, "k", "body", () -> {
+          started.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return runs.incrementAndGet();
+        }));
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+    CompletableFuture<IdempotencyStore.Outcome<Integer>> retry = CompletableFuture.supplyAsync(
+        () -> store.execute(1L, "k", "body", runs::incrementAndGet));
+    Thread.sleep(100);
+    assertThat(retry).isNotDone();
+
+    release.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS).replayed()).isFalse();
+    assertThat(retry.get(5, TimeUnit.SECONDS).replayed()).isTrue();
+    assertThat(retry.get().value()).isEqualTo(1);
+    assertThat(runs).hasValue(1);
+  }
+}
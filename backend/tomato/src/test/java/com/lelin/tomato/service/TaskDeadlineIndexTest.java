@@ -0,0 +1,74 @@
+package com.lelin.tomato.service;
+
+import com.lelin.tomato.model.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class TaskDeadlineIndexTest {
+
+  private TaskExpiryService expiryService;
+  private TaskDeadlineIndex index;
+
+  @BeforeEach
+  void setUp() {
+    expiryService = mock(TaskExpiryService.class);
+    index = new TaskDeadlineIndex(expiryService);
+    ReflectionTestUtils.setField(index, "tickMs", 50L);
+    ReflectionTestUtils.setField(index, "horizonMinutes", 60L);
+    index.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    index.stop();
+  }
+
+  private Task task(long id, LocalDateTime dueTime) {
+    return Task.builder()
+        .id(id)
+        .userId(7L)
+        .title("t" + id)
+        .dueTime(dueTime)
+        .timeBombEnabled(dueTime != null)
+        .build();
+  }
+
+  @Test
+  void expires_task_shortly_after_its_deadline() {
+    LocalDateTime due = LocalDateTime.now().plusNanos(200_000_000);
+    index.track(task(1, due));
+
+    verify(expiryService, timeout(1000)).expire(1L, 7L, due);
+    assertThat(index.size()).isZero();
+  }
+
+  @Test
+  void rescheduled_and_cancelled_tasks_do_not_fire() throws Exception {
+    index.track(task(1, LocalDateTime.now().plusNanos(100_000_000)));
+    index.track(task(1, LocalDateTime.now().plusMinutes(30)));
+
+    index.track(task(2, LocalDateTime.now().plusNanos(100_000_000)));
+    index.cancel(2L);
+
+    Thread.sleep(500);
+
+    verify(expiryService, never()).expire(anyLong(), anyLong(), any());
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  void ignores_tasks_without_deadline_or_beyond_horizon() {
+    index.track(task(1, null));
+    index.track(task(2, LocalDateTime.now().plusHours(5)));
+
+    assertThat(index.size()).isZero();
+  }
+}
@@ -1,6 +1,7 @@
 import { useEffect, useRef, useState } from "react";
 import Navbar from "../components/Navbar";
 import api from "../services/api";
+import { getAllTasks } from "../services/taskService";
 import type { Task } from "../types/Task";
 import type { Punishment } from "../types/Punishment";
 import Garden from "../components/Garden";
@@ -49,15 +50,16 @@ export default function Dashboard() {
 
   const fetchAll = async () => {
     try {
-      const [tasksRes, tomatoesRes, punishmentsRes] = await Promise.all([
-        api.get("/tasks"),
-        api.get("/tomatoes/count"),
-        api.get("/punishments/active"),
+      // the garden carries the open tasks, tomato count and active punishments;
+      // completed tasks are history and come from the paged task list
+      const [{ data: garden }, completed] = await Promise.all([
+        api.get("/garden"),
+        getAllTasks({ completed: true }),
       ]);
 
-      setTasks(tasksRes.data);
+      setTasks([...garden.tasks, ...completed]);
 
-      const newCount = tomatoesRes.data;
+      const newCount = garden.tomatoCount;
       const prev = prevTomatoesRef.current;
       setTomatoes(newCount);
       if (newCount > prev) {
@@ -65,7 +67,7 @@ export default function Dashboard() {
       }
       prevTomatoesRef.current = newCount;
 
-      const list: Punishment[] = punishmentsRes.data;
+      const list: Punishment[] = garden.activePunishments;
       setPunishmentsList(list);
       const newPunishmentCount = list.length;
       const prevP = prevPunishmentsRef.current;
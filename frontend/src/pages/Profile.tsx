@@ -3,13 +3,12 @@ import { useNavigate } from "react-router-dom";
 import { AuthContext } from "../context/AuthContext";
 import api from "../services/api";
 import type { User } from "../types/User";
-import type { Task } from "../types/Task";
 
 export default function Profile() {
   const { logout } = useContext(AuthContext);
   const navigate = useNavigate();
   const [user, setUser] = useState<User | null>(null);
-  const [tasks, setTasks] = useState<Task[]>([]);
+  const [totalTomatoes, setTotalTomatoes] = useState(0);
   const [usernameInput, setUsernameInput] = useState("");
   const [usernameError, setUsernameError] = useState("");
   const [usernameSuccess, setUsernameSuccess] = useState("");
@@ -21,13 +20,13 @@ export default function Profile() {
   useEffect(() => {
     const fetchProfile = async () => {
       try {
-        const [meRes, tasksRes] = await Promise.all([
+        const [meRes, countRes] = await Promise.all([
           api.get("/auth/me"),
-          api.get("/tasks"),
+          api.get("/tomatoes/count"),
         ]);
         setUser(meRes.data);
         setUsernameInput(meRes.data.username ?? "");
-        setTasks(tasksRes.data);
+        setTotalTomatoes(countRes.data);
       } catch (e) {
         console.error("Failed to fetch profile", e);
       }
@@ -74,8 +73,6 @@ export default function Profile() {
     return isNaN(d.getTime()) ? "—" : d.toLocaleDateString();
   };
 
-  const totalTomatoes = tasks.reduce((sum, t) => sum + (t.tomatoesEarned || 0), 0);
-
   const avatarLetter = user?.username ? user.username[0].toUpperCase() : user?.email ? user.email[0].toUpperCase() : "?";
 
   return (
@@ -1,5 +1,27 @@
 import api from "./api";
+import type { Task, TaskPage } from "../types/Task";
+
+const PAGE_LIMIT = 200;
+
+// GET /tasks is paginated: { items, nextCursor }; pass nextCursor back as params.cursor
+export const getTasks = (params?: Record<string, string | number | boolean>) =>
+  api.get<TaskPage>("/tasks", { params });
+
+// follows nextCursor until the last page
+export const getAllTasks = async (params: Record<string, string | number | boolean> = {}) => {
+  const tasks: Task[] = [];
+  let cursor: string | null = null;
+  do {
+    const { data }: { data: TaskPage } = await getTasks({
+      ...params,
+      limit: PAGE_LIMIT,
+      ...(cursor ? { cursor } : {}),
+    });
+    tasks.push(...data.items);
+    cursor = data.nextCursor;
+  } while (cursor);
+  return tasks;
+};
 
-export const getTasks = () => api.get("/tasks");
 export const createTask = (task: any) => api.post("/tasks", task);
-export const completeTask = (taskId: number) => api.put(`/tasks/${taskId}/complete`);
\ No newline at end of file
+export const completeTask = (taskId: number) => api.put(`/tasks/${taskId}/complete`);
@@ -10,4 +10,8 @@ export interface Task {
     completed: boolean;
     tomatoesEarned: number; 
   }
-  
\ No newline at end of file
+  
+export interface TaskPage {
+  items: Task[];
+  nextCursor: string | null;
+}
@@ -0,0 +1,14 @@
+-- Runs once, on the replica's first start. The primary's image creates tomato_db and
+-- tomato_user with the binlog off, so they are created here too before replicating.
+CREATE DATABASE IF NOT EXISTS tomato_db;
+CREATE USER IF NOT EXISTS 'tomato_user'@'%' IDENTIFIED BY 'tomato_pass';
+GRANT SELECT ON tomato_db.* TO 'tomato_user'@'%';
+
+CHANGE REPLICATION SOURCE TO
+  SOURCE_HOST = 'mysql',
+  SOURCE_PORT = 3306,
+  SOURCE_USER = 'root',
+  SOURCE_PASSWORD = 'rootpass',
+  SOURCE_AUTO_POSITION = 1,
+  GET_SOURCE_PUBLIC_KEY = 1;
+START REPLICA;
@@ -1,11 +1,23 @@
 import { axiosInstance } from './api/axiosConfig';
 import { TASK_ENDPOINTS } from './api/endpoints';
-import { Task, CreateTaskRequest, UpdateTaskRequest } from '../types/Task';
+import { Task, TaskPage, CreateTaskRequest, UpdateTaskRequest } from '../types/Task';
+
+// the server's maximum page size
+const PAGE_LIMIT = 200;
 
 export const taskService = {
-  async getAllTasks(): Promise<Task[]> {
-    const response = await axiosInstance.get<Task[]>(TASK_ENDPOINTS.GET_ALL);
-    return response.data;
+  // GET /tasks is keyset-paginated; follows nextCursor until the last page
+  async getAllTasks(params: { completed?: boolean } = {}): Promise<Task[]> {
+    const tasks: Task[] = [];
+    let cursor: string | null = null;
+    do {
+      const response = await axiosInstance.get<TaskPage>(TASK_ENDPOINTS.GET_ALL, {
+        params: { ...params, limit: PAGE_LIMIT, ...(cursor ? { cursor } : {}) },
+      });
+      tasks.push(...response.data.items);
+      cursor = response.data.nextCursor;
+    } while (cursor);
+    return tasks;
   },
 
   async getTask(id: number): Promise<Task> {
@@ -33,12 +45,10 @@ export const taskService = {
   },
 
   async getActiveTasks(): Promise<Task[]> {
-    const tasks = await this.getAllTasks();
-    return tasks.filter(task => !task.completed);
+    return this.getAllTasks({ completed: false });
   },
 
   async getCompletedTasks(): Promise<Task[]> {
-    const tasks = await this.getAllTasks();
-    return tasks.filter(task => task.completed);
+    return this.getAllTasks({ completed: true });
   },
 };
@@ -14,6 +14,12 @@ export interface Task {
   completedAt: string | null;
 }
 
+// One page of GET /tasks; pass nextCursor back as ?cursor= for the next one
+export interface TaskPage {
+  items: Task[];
+  nextCursor: string | null;
+}
+
 export interface CreateTaskRequest {
   title: string;
   description?: string;